@@ -13,7 +13,13 @@ import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import org.json.JSONObject;
+
 public class AlarmActivity extends AppCompatActivity {
+    private static final String STATE_ALARM = "alarm_snapshot";
+
+    // 响铃时的闹钟快照（Intent 只携带 ID，内容从 AlarmStore 读取）
+    private JSONObject alarm;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,15 +50,22 @@ public class AlarmActivity extends AppCompatActivity {
         layout.setBackgroundColor(0xFF0F172A);
         layout.setPadding(60, 60, 60, 60);
 
-        String titleText = getIntent().getStringExtra("title");
-        String bodyText = getIntent().getStringExtra("body");
+        int id = getIntent().getIntExtra(AlarmStore.EXTRA_ID, 0);
+        // Recreated (rotation, uiMode, keyguard): the store entry is already gone, use the saved snapshot
+        alarm = restoreSnapshot(savedInstanceState);
+        if (alarm == null) {
+            alarm = AlarmStore.find(this, id);
+        }
+        String titleText = alarm != null ? alarm.optString("title", null) : null;
+        String bodyText = alarm != null ? alarm.optString("body", null) : null;
         // Remove alarm from prefs since it has rung (so it doesn't auto-restore if boot
         // loop)
         // Ideally we keep it until dismissed, but for now assuming ring = consumed.
         // Actually, if we crash here, we might want it back. But let's leave it for
         // now.
-        int id = getIntent().getIntExtra("id", 0);
-        removeAlarmFromPrefs(this, id);
+        if (savedInstanceState == null) {
+            AlarmStore.remove(this, id);
+        }
 
         // Icon or Top Decoration
         TextView iconView = new TextView(this);
@@ -125,8 +138,7 @@ public class AlarmActivity extends AppCompatActivity {
 
         dismissBtn.setOnClickListener(v -> {
             stopAlarmService();
-            // TODO: Ideally we could trigger a "Mark Done" intent to the main app here?
-            // For now just close, user opens app to check.
+            openHabitInApp();
             finish();
         });
 
@@ -146,27 +158,19 @@ public class AlarmActivity extends AppCompatActivity {
         // Calculate time 5 minutes from now
         long triggerAtMillis = System.currentTimeMillis() + 5 * 60 * 1000;
 
-        // Get original intent data to reschedule
-        String title = getIntent().getStringExtra("title");
-        String body = getIntent().getStringExtra("body");
-        String habitId = getIntent().getStringExtra("habitId");
-        int id = getIntent().getIntExtra("id", 0);
+        // Re-save the snapshot taken on ring so the snoozed alarm keeps its content
+        int id = getIntent().getIntExtra(AlarmStore.EXTRA_ID, 0);
+        String title = alarm != null ? alarm.optString("title", null) : null;
+        String body = alarm != null ? alarm.optString("body", null) : null;
+        String habitId = alarm != null ? alarm.optString("habitId", null) : null;
+        String aspiration = alarm != null ? alarm.optString("aspiration", null) : null;
+        String sound = alarm != null ? alarm.optString("sound", null) : null;
 
         // PERSISTENCE FIX: Save to SharedPreferences so it survives reboot
-        saveAlarmToPrefs(this, id, triggerAtMillis, title, body, habitId);
-
-        Intent intent = new Intent(this, AlarmReceiver.class);
-        intent.setAction("ALARM_TRIGGER");
-        intent.putExtra("title", title);
-        intent.putExtra("body", body);
-        intent.putExtra("habitId", habitId);
-        intent.putExtra("id", id);
+        AlarmStore.put(this, id, triggerAtMillis, title, body, habitId, aspiration, sound);
 
-        android.app.PendingIntent pendingIntent = android.app.PendingIntent.getBroadcast(
-                this,
-                id,
-                intent,
-                android.app.PendingIntent.FLAG_UPDATE_CURRENT | android.app.PendingIntent.FLAG_IMMUTABLE);
+        // Same id-only PendingIntent as AlarmModule, so cancelAlarm still matches it
+        android.app.PendingIntent pendingIntent = AlarmModule.buildAlarmPendingIntent(this, id);
 
         android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
         if (alarmManager != null) {
@@ -189,61 +193,47 @@ public class AlarmActivity extends AppCompatActivity {
         finish();
     }
 
+    /**
+     * 打开主界面并直接定位到触发提醒的习惯卡片
+     */
+    private void openHabitInApp() {
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        String habitId = alarm != null ? alarm.optString("habitId", null) : null;
+        if (habitId != null) {
+            intent.putExtra(AlarmModule.EXTRA_OPEN_HABIT, habitId);
+        }
+        intent.putExtra(AlarmModule.EXTRA_LAUNCH_AT, android.os.SystemClock.elapsedRealtime());
+        startActivity(intent);
+    }
+
     private void stopAlarmService() {
         Intent intent = new Intent(this, AlarmService.class);
         intent.setAction("STOP_ALARM");
         startService(intent);
     }
 
-    private void saveAlarmToPrefs(Context context, int id, long time, String title, String body, String habitId) {
-        try {
-            android.content.SharedPreferences prefs = context.getSharedPreferences("FugeAlarmPrefs",
-                    Context.MODE_PRIVATE);
-            String existingJson = prefs.getString("saved_alarms", "[]");
-            org.json.JSONArray alarms = new org.json.JSONArray(existingJson);
-
-            // Remove existing same ID to avoid duplicates
-            org.json.JSONArray updated = new org.json.JSONArray();
-            for (int i = 0; i < alarms.length(); i++) {
-                org.json.JSONObject alarm = alarms.getJSONObject(i);
-                if (alarm.getInt("id") != id) {
-                    updated.put(alarm);
-                }
-            }
-
-            // Add new alarm
-            org.json.JSONObject newAlarm = new org.json.JSONObject();
-            newAlarm.put("id", id);
-            newAlarm.put("time", time);
-            newAlarm.put("title", title);
-            newAlarm.put("body", body);
-            newAlarm.put("habitId", habitId);
-            updated.put(newAlarm);
-
-            prefs.edit().putString("saved_alarms", updated.toString()).apply();
-        } catch (Exception e) {
-            e.printStackTrace();
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (alarm != null) {
+            outState.putString(STATE_ALARM, alarm.toString());
         }
     }
 
-    private void removeAlarmFromPrefs(Context context, int id) {
+    private JSONObject restoreSnapshot(Bundle savedInstanceState) {
+        if (savedInstanceState == null) {
+            return null;
+        }
+        String json = savedInstanceState.getString(STATE_ALARM);
+        if (json == null) {
+            return null;
+        }
         try {
-            android.content.SharedPreferences prefs = context.getSharedPreferences("FugeAlarmPrefs",
-                    Context.MODE_PRIVATE);
-            String existingJson = prefs.getString("saved_alarms", "[]");
-            org.json.JSONArray alarms = new org.json.JSONArray(existingJson);
-
-            org.json.JSONArray updated = new org.json.JSONArray();
-            for (int i = 0; i < alarms.length(); i++) {
-                org.json.JSONObject alarm = alarms.getJSONObject(i);
-                if (alarm.getInt("id") != id) {
-                    updated.put(alarm);
-                }
-            }
-
-            prefs.edit().putString("saved_alarms", updated.toString()).apply();
+            return new JSONObject(json);
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
     }
 
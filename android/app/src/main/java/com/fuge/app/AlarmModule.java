@@ -4,8 +4,8 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.getcapacitor.JSObject;
@@ -15,12 +15,84 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Calendar;
+
 @CapacitorPlugin(name = "AlarmModule")
 public class AlarmModule extends Plugin {
-    private static final String PREFS_NAME = "FugeAlarmPrefs";
-    private static final String KEY_ALARMS = "saved_alarms";
+    /** 从闹钟界面跳转到 MainActivity 时携带的习惯 ID */
+    public static final String EXTRA_OPEN_HABIT = "openHabitId";
+    /** 跳转发起时间（elapsedRealtime），用于统计启动耗时 */
+    public static final String EXTRA_LAUNCH_AT = "launchAt";
+    // 连续跳过暂停窗口的上限，防止窗口数据异常时死循环
+    private static final int MAX_WINDOW_SKIPS = 32;
+
+    // 待网页端读取的深链接，以及启动耗时统计所需的信息
+    private static volatile String pendingHabitId;
+    private static volatile long pendingLaunchAt;
+    private static volatile String pendingLaunchBucket;
+
+    /**
+     * 记录来自闹钟界面的深链接（由 MainActivity 调用）
+     */
+    public static void setPendingLaunch(String habitId, long launchAt, String bucket) {
+        pendingHabitId = habitId;
+        pendingLaunchAt = launchAt;
+        pendingLaunchBucket = bucket;
+    }
+
+    /**
+     * 取出待打开的习惯 ID（取出后清空），没有时返回空对象
+     */
+    @PluginMethod
+    public void consumeLaunchHabit(PluginCall call) {
+        JSObject ret = new JSObject();
+        String habitId = pendingHabitId;
+        pendingHabitId = null;
+        if (habitId != null) {
+            ret.put("habitId", habitId);
+        }
+        call.resolve(ret);
+    }
+
+    /**
+     * 网页端定位到习惯卡片后调用，记录从点击闹钟到可交互的耗时
+     */
+    @PluginMethod
+    public void reportHabitOpened(PluginCall call) {
+        JSObject ret = new JSObject();
+        long launchAt = pendingLaunchAt;
+        pendingLaunchAt = 0;
+        if (launchAt > 0) {
+            long latencyMs = SystemClock.elapsedRealtime() - launchAt;
+            String bucket = pendingLaunchBucket != null ? pendingLaunchBucket : AlarmStore.LAUNCH_COLD;
+            AlarmStore.recordLaunchLatency(getContext(), latencyMs, bucket);
+            ret.put("latencyMs", latencyMs);
+            ret.put("bucket", bucket);
+            Log.d("AlarmModule", "Alarm to interactive: " + latencyMs + "ms (" + bucket + ")");
+        }
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getLaunchMetrics(PluginCall call) {
+        try {
+            JSObject ret = new JSObject();
+            ret.put("metrics", AlarmStore.loadLaunchMetrics(getContext()));
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e("AlarmModule", "Error getting launch metrics", e);
+            call.reject("Error getting launch metrics: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void load() {
+        // 启动闹钟健康检查（已注册时保持不变）
+        AlarmWatchdogWorker.schedule(getContext());
+    }
 
     @PluginMethod
     public void setAlarm(PluginCall call) {
@@ -29,6 +101,8 @@ public class AlarmModule extends Plugin {
             String title = call.getString("title", "Alarm");
             String body = call.getString("body", "Time to wake up!");
             String habitId = call.getString("habitId", "0");
+            String aspiration = call.getString("aspiration");
+            String sound = call.getString("sound");
             Integer id = call.getInt("id", 1);
 
             if (timestampStr == null) {
@@ -48,14 +122,22 @@ public class AlarmModule extends Plugin {
             long time = timestamp.longValue();
 
             // 持久化闹钟信息
-            saveAlarmToPrefs(context, id, time, title, body, habitId);
-
-            // 设置闹钟
-            boolean success = scheduleAlarm(context, id, time, title, body, habitId);
+            AlarmStore.put(context, id, time, title, body, habitId, aspiration, sound);
+
+            // 跳过已设置的暂停窗口，再设置闹钟（PendingIntent 只携带 ID）
+            long trigger = time;
+            JSONObject alarm = AlarmStore.find(context, id);
+            if (alarm != null) {
+                trigger = planTrigger(context, alarm, System.currentTimeMillis());
+                if (trigger != time) {
+                    AlarmStore.updateTime(context, id, alarm.getLong("time"), trigger < 0);
+                }
+            }
+            boolean success = applyTrigger(context, id, trigger);
 
             if (success) {
                 call.resolve();
-                Log.d("AlarmModule", "Alarm set for: " + time + " ID: " + id);
+                Log.d("AlarmModule", "Alarm set for: " + trigger + " ID: " + id);
             } else {
                 call.reject("Failed to set alarm");
             }
@@ -71,19 +153,10 @@ public class AlarmModule extends Plugin {
             Integer id = call.getInt("id", 1);
             Context context = getContext();
 
-            // 从 SharedPreferences 中移除
-            removeAlarmFromPrefs(context, id);
+            // 从本地存储中移除
+            AlarmStore.remove(context, id);
 
-            // 取消系统闹钟
-            Intent intent = new Intent(context, AlarmReceiver.class);
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context, id, intent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-            if (alarmManager != null) {
-                alarmManager.cancel(pendingIntent);
-            }
+            unscheduleAlarm(context, id);
 
             call.resolve();
             Log.d("AlarmModule", "Alarm cancelled: " + id);
@@ -94,99 +167,344 @@ public class AlarmModule extends Plugin {
     }
 
     /**
-     * 设置系统闹钟
+     * 原地修改闹钟的标题、内容或铃声，不会重新注册系统闹钟
      */
-    public static boolean scheduleAlarm(Context context, int id, long time, String title, String body, String habitId) {
+    @PluginMethod
+    public void updateAlarmContent(PluginCall call) {
         try {
-            Intent intent = new Intent(context, AlarmReceiver.class);
-            intent.putExtra("title", title);
-            intent.putExtra("body", body);
-            intent.putExtra("habitId", habitId);
-            intent.putExtra("id", id);
-            intent.addFlags(Intent.FLAG_RECEIVER_FOREGROUND);
+            Integer id = call.getInt("id");
+            if (id == null) {
+                call.reject("Id is required");
+                return;
+            }
 
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context, id, intent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+            JSONObject updated = AlarmStore.updateContent(getContext(), id,
+                    call.getString("title"), call.getString("body"), call.getString("sound"));
+            if (updated == null) {
+                call.reject("Alarm not found: " + id);
+                return;
+            }
 
-            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            call.resolve();
+            Log.d("AlarmModule", "Alarm content updated: " + id);
+        } catch (Exception e) {
+            Log.e("AlarmModule", "Error updating alarm content", e);
+            call.reject("Error updating alarm content: " + e.getMessage());
+        }
+    }
 
-            if (alarmManager != null) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                    if (!alarmManager.canScheduleExactAlarms()) {
-                        Log.e("AlarmModule", "SCHEDULE_EXACT_ALARM permission not granted");
-                        return false;
-                    }
-                }
+    /**
+     * 设置命名暂停窗口（休假 / 暂停习惯）。只写一次本地存储，不取消任何系统闹钟。
+     * 窗口内到点的闹钟由 AlarmReceiver 静默跳过：有结束时间的窗口直接顺延到结束后的第一次，
+     * 无结束时间的窗口暂不注册，等 clearSuspension 时再注册。
+     * 不传 aspiration 和 habitId 时为全局窗口；不传 end 表示直到手动恢复
+     */
+    @PluginMethod
+    public void setSuspension(PluginCall call) {
+        try {
+            String name = call.getString("name");
+            if (name == null) {
+                call.reject("Name is required");
+                return;
+            }
 
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, pendingIntent);
-                } else {
-                    alarmManager.setExact(AlarmManager.RTC_WAKEUP, time, pendingIntent);
-                }
-                return true;
+            long start = call.getLong("start", System.currentTimeMillis());
+            long end = call.getLong("end", 0L);
+            if (end > 0 && end <= start) {
+                call.reject("End must be after start");
+                return;
             }
+
+            AlarmStore.putSuspension(getContext(), name, start, end,
+                    call.getString("aspiration"), call.getString("habitId"));
+
+            call.resolve();
+            Log.d("AlarmModule", "Suspension set: " + name + " [" + start + ", " + end + ")");
         } catch (Exception e) {
-            Log.e("AlarmModule", "Failed to schedule alarm", e);
+            Log.e("AlarmModule", "Error setting suspension", e);
+            call.reject("Error setting suspension: " + e.getMessage());
         }
-        return false;
     }
 
     /**
-     * 保存闹钟信息到 SharedPreferences
+     * 移除命名暂停窗口。已注册的闹钟无需重新调度，只重新注册因该窗口暂缓的闹钟
      */
-    private void saveAlarmToPrefs(Context context, int id, long time, String title, String body, String habitId) {
+    @PluginMethod
+    public void clearSuspension(PluginCall call) {
         try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String existingJson = prefs.getString(KEY_ALARMS, "[]");
-            JSONArray alarms = new JSONArray(existingJson);
+            String name = call.getString("name");
+            if (name == null) {
+                call.reject("Name is required");
+                return;
+            }
+
+            AlarmStore.removeSuspension(getContext(), name);
+            int resumed = rearmParkedAlarms(getContext());
+
+            JSObject ret = new JSObject();
+            ret.put("resumed", resumed);
+            call.resolve(ret);
+            Log.d("AlarmModule", "Suspension cleared: " + name);
+        } catch (Exception e) {
+            Log.e("AlarmModule", "Error clearing suspension", e);
+            call.reject("Error clearing suspension: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getSuspensions(PluginCall call) {
+        try {
+            JSObject ret = new JSObject();
+            ret.put("suspensions", AlarmStore.loadSuspensions(getContext()));
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e("AlarmModule", "Error getting suspensions", e);
+            call.reject("Error getting suspensions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 计算闹钟在 now 之后的下一次同一时刻。
+     * 按日历日顺延，夏令时切换前后仍保持同一墙上时间
+     */
+    public static long nextDailyTrigger(long time, long now) {
+        Calendar next = Calendar.getInstance();
+        next.setTimeInMillis(time);
+        do {
+            next.add(Calendar.DAY_OF_MONTH, 1);
+        } while (next.getTimeInMillis() <= now);
+        return next.getTimeInMillis();
+    }
+
+    /**
+     * 计算闹钟实际应注册的触发时间：time 落在有结束时间的暂停窗口内时，
+     * 直接跳到窗口结束后的第一次同一时刻；落在无结束时间的窗口内时返回 -1（不注册）
+     */
+    public static long resolveTrigger(Context context, JSONObject alarm, long time) {
+        long next = time;
+        for (int i = 0; i < MAX_WINDOW_SKIPS; i++) {
+            long end = AlarmStore.suspensionEnd(context, alarm, next);
+            if (end == 0) {
+                return next;
+            }
+            if (end < 0) {
+                return -1;
+            }
+            next = nextDailyTrigger(next, end - 1);
+        }
+        return next;
+    }
+
+    /**
+     * 确定已保存闹钟的注册时间，并把结果写回 alarm 的 time / parked（由调用方保存）。
+     * 已暂缓的闹钟原定时间已过时，先顺延到 now 之后。返回 -1 表示暂缓、不注册
+     */
+    public static long planTrigger(Context context, JSONObject alarm, long now) throws JSONException {
+        long time = alarm.getLong("time");
+        if (alarm.optBoolean("parked", false) && time <= now) {
+            time = nextDailyTrigger(time, now);
+        }
+
+        long trigger = resolveTrigger(context, alarm, time);
+        if (trigger < 0) {
+            alarm.put("time", time);
+            alarm.put("parked", true);
+        } else {
+            alarm.put("time", trigger);
+            alarm.remove("parked");
+        }
+        return trigger;
+    }
 
-            // 移除已存在的同 ID 闹钟
-            JSONArray updated = new JSONArray();
+    /**
+     * 按 planTrigger 的结果注册闹钟；暂缓时撤销已有注册。返回是否处理成功
+     */
+    public static boolean applyTrigger(Context context, int id, long trigger) {
+        if (trigger < 0) {
+            unscheduleAlarm(context, id);
+            Log.d("AlarmModule", "Alarm " + id + " parked until its suspension is cleared");
+            return true;
+        }
+        return scheduleAlarm(context, id, trigger);
+    }
+
+    /**
+     * 重新注册因无结束时间的暂停窗口而暂缓的闹钟（仍处于其他窗口内的保持暂缓），返回注册数量
+     */
+    public static int rearmParkedAlarms(Context context) {
+        int resumed = 0;
+        try {
+            JSONArray alarms = AlarmStore.loadAll(context);
+            long now = System.currentTimeMillis();
+            boolean changed = false;
             for (int i = 0; i < alarms.length(); i++) {
                 JSONObject alarm = alarms.getJSONObject(i);
-                if (alarm.getInt("id") != id) {
-                    updated.put(alarm);
+                if (!alarm.optBoolean("parked", false)) {
+                    continue;
                 }
+                long trigger = planTrigger(context, alarm, now);
+                changed = true;
+                if (trigger >= 0 && scheduleAlarm(context, alarm.getInt("id"), trigger)) {
+                    resumed++;
+                }
+            }
+            if (changed) {
+                AlarmStore.saveAll(context, alarms);
             }
+            Log.d("AlarmModule", "Re-armed " + resumed + " parked alarms");
+        } catch (Exception e) {
+            Log.e("AlarmModule", "Failed to re-arm parked alarms", e);
+        }
+        return resumed;
+    }
 
-            // 添加新闹钟
-            JSONObject newAlarm = new JSONObject();
-            newAlarm.put("id", id);
-            newAlarm.put("time", time);
-            newAlarm.put("title", title);
-            newAlarm.put("body", body);
-            newAlarm.put("habitId", habitId);
-            updated.put(newAlarm);
+    /**
+     * 查询闹钟健康检查统计（运行次数、发现丢失数、修复数等）
+     */
+    @PluginMethod
+    public void getAlarmHealth(PluginCall call) {
+        try {
+            JSObject ret = new JSObject();
+            ret.put("metrics", AlarmStore.loadWatchdogMetrics(getContext()));
+            call.resolve(ret);
+        } catch (Exception e) {
+            Log.e("AlarmModule", "Error getting alarm health", e);
+            call.reject("Error getting alarm health: " + e.getMessage());
+        }
+    }
 
-            prefs.edit().putString(KEY_ALARMS, updated.toString()).apply();
-            Log.d("AlarmModule", "Saved alarm to prefs: " + newAlarm.toString());
+    /**
+     * 立即执行一次健康检查，返回本次检查结果
+     */
+    @PluginMethod
+    public void runAlarmWatchdog(PluginCall call) {
+        try {
+            JSONObject result = repairAlarms(getContext());
+            call.resolve(JSObject.fromJSONObject(result));
         } catch (Exception e) {
-            Log.e("AlarmModule", "Failed to save alarm to prefs", e);
+            Log.e("AlarmModule", "Error running alarm watchdog", e);
+            call.reject("Error running alarm watchdog: " + e.getMessage());
         }
     }
 
+    private static Intent buildAlarmIntent(Context context, int id) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.putExtra(AlarmStore.EXTRA_ID, id);
+        intent.addFlags(Intent.FLAG_RECEIVER_FOREGROUND);
+        return intent;
+    }
+
+    /**
+     * 构建闹钟的 PendingIntent，只携带闹钟 ID，内容在触发时从 AlarmStore 读取
+     */
+    public static PendingIntent buildAlarmPendingIntent(Context context, int id) {
+        return PendingIntent.getBroadcast(
+                context, id, buildAlarmIntent(context, id),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
     /**
-     * 从 SharedPreferences 中移除闹钟
+     * 用 FLAG_NO_CREATE 探测闹钟是否仍在系统中注册（不会创建新的 PendingIntent）
      */
-    private void removeAlarmFromPrefs(Context context, int id) {
+    public static boolean isAlarmRegistered(Context context, int id) {
+        PendingIntent existing = PendingIntent.getBroadcast(
+                context, id, buildAlarmIntent(context, id),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        return existing != null;
+    }
+
+    /**
+     * 对比本地存储与系统注册情况，只重新注册丢失的未来闹钟（供 AlarmWatchdogWorker 及应用更新后调用）。
+     * 检查本身出错时记录失败并抛出异常
+     */
+    public static JSONObject repairAlarms(Context context) throws JSONException {
+        JSONObject result = new JSONObject();
         try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String existingJson = prefs.getString(KEY_ALARMS, "[]");
-            JSONArray alarms = new JSONArray(existingJson);
+            JSONArray alarms = AlarmStore.loadAll(context);
+            long now = System.currentTimeMillis();
 
-            JSONArray updated = new JSONArray();
+            // 先探测，收集丢失的闹钟，再一次性批量重新注册（暂缓中的闹钟本就未注册，不计入）
+            JSONArray missing = new JSONArray();
+            int checked = 0;
             for (int i = 0; i < alarms.length(); i++) {
                 JSONObject alarm = alarms.getJSONObject(i);
-                if (alarm.getInt("id") != id) {
-                    updated.put(alarm);
+                if (alarm.optBoolean("parked", false) || alarm.getLong("time") <= now) {
+                    continue;
+                }
+                checked++;
+                if (!isAlarmRegistered(context, alarm.getInt("id"))) {
+                    missing.put(alarm);
                 }
             }
 
-            prefs.edit().putString(KEY_ALARMS, updated.toString()).apply();
+            int repaired = 0;
+            for (int i = 0; i < missing.length(); i++) {
+                JSONObject alarm = missing.getJSONObject(i);
+                long trigger = planTrigger(context, alarm, now);
+                if (applyTrigger(context, alarm.getInt("id"), trigger)) {
+                    repaired++;
+                }
+            }
+            if (missing.length() > 0) {
+                AlarmStore.saveAll(context, alarms);
+            }
+
+            AlarmStore.recordWatchdogRun(context, checked, missing.length(), repaired);
+            result.put("checked", checked);
+            result.put("dropped", missing.length());
+            result.put("repaired", repaired);
+            Log.d("AlarmModule", "Watchdog checked " + checked + " alarms, dropped " + missing.length()
+                    + ", repaired " + repaired);
+        } catch (JSONException | RuntimeException e) {
+            // 记为失败的检查并抛出，交给调用方处理（AlarmWatchdogWorker 会稍后重试）
+            Log.e("AlarmModule", "Failed to repair alarms", e);
+            AlarmStore.recordWatchdogFailure(context, e.toString());
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * 取消系统闹钟，同时作废 PendingIntent，保证 FLAG_NO_CREATE 探测结果准确
+     */
+    public static void unscheduleAlarm(Context context, int id) {
+        PendingIntent pendingIntent = buildAlarmPendingIntent(context, id);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(pendingIntent);
+        }
+        pendingIntent.cancel();
+    }
+
+    /**
+     * 设置系统闹钟
+     */
+    public static boolean scheduleAlarm(Context context, int id, long time) {
+        try {
+            PendingIntent pendingIntent = buildAlarmPendingIntent(context, id);
+
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+            if (alarmManager != null) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    if (!alarmManager.canScheduleExactAlarms()) {
+                        Log.e("AlarmModule", "SCHEDULE_EXACT_ALARM permission not granted");
+                        return false;
+                    }
+                }
+
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, time, pendingIntent);
+                } else {
+                    alarmManager.setExact(AlarmManager.RTC_WAKEUP, time, pendingIntent);
+                }
+                return true;
+            }
         } catch (Exception e) {
-            Log.e("AlarmModule", "Failed to remove alarm from prefs", e);
+            Log.e("AlarmModule", "Failed to schedule alarm", e);
         }
+        return false;
     }
 
     /**
@@ -194,9 +512,7 @@ public class AlarmModule extends Plugin {
      */
     public static void restoreAlarms(Context context) {
         try {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String existingJson = prefs.getString(KEY_ALARMS, "[]");
-            JSONArray alarms = new JSONArray(existingJson);
+            JSONArray alarms = AlarmStore.loadAll(context);
 
             long now = System.currentTimeMillis();
             JSONArray validAlarms = new JSONArray();
@@ -205,24 +521,22 @@ public class AlarmModule extends Plugin {
                 JSONObject alarm = alarms.getJSONObject(i);
                 int id = alarm.getInt("id");
                 long time = alarm.getLong("time");
-                String title = alarm.getString("title");
-                String body = alarm.getString("body");
-                String habitId = alarm.getString("habitId");
 
-                // 只恢复未来的闹钟
-                if (time > now) {
-                    boolean success = scheduleAlarm(context, id, time, title, body, habitId);
+                // 只恢复未来的闹钟和暂缓中的闹钟，同时跳过暂停窗口
+                if (time > now || alarm.optBoolean("parked", false)) {
+                    long trigger = planTrigger(context, alarm, now);
+                    boolean success = applyTrigger(context, id, trigger);
                     if (success) {
                         validAlarms.put(alarm);
-                        Log.d("AlarmModule", "Restored alarm: " + id + " at " + time);
+                        Log.d("AlarmModule", "Restored alarm: " + id + " at " + trigger);
                     }
                 } else {
                     Log.d("AlarmModule", "Skipped past alarm: " + id);
                 }
             }
 
-            // 更新 prefs，移除过期的闹钟
-            prefs.edit().putString(KEY_ALARMS, validAlarms.toString()).apply();
+            // 更新存储，移除过期的闹钟
+            AlarmStore.saveAll(context, validAlarms);
             Log.d("AlarmModule", "Restored " + validAlarms.length() + " alarms after boot");
         } catch (Exception e) {
             Log.e("AlarmModule", "Failed to restore alarms", e);
@@ -11,26 +11,43 @@ import android.os.Build;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
 
+import org.json.JSONObject;
+
 public class AlarmReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.d("AlarmReceiver", "Alarm received! Starting AlarmService...");
 
-        String title = intent.getStringExtra("title");
-        String body = intent.getStringExtra("body");
-        String habitId = intent.getStringExtra("habitId");
-        int id = intent.getIntExtra("id", 0);
+        // 只转发闹钟 ID，内容由 AlarmService 从 AlarmStore 读取
+        int id = intent.getIntExtra(AlarmStore.EXTRA_ID, 0);
+
+        // 处于暂停窗口（休假 / 暂停习惯）时静默跳过：顺延到窗口结束后的第一次，
+        // 无结束时间的窗口则暂不注册，等恢复时再注册
+        JSONObject alarm = AlarmStore.find(context, id);
+        long now = System.currentTimeMillis();
+        if (alarm != null && AlarmStore.isSuspended(context, alarm, now)) {
+            try {
+                alarm.put("time", AlarmModule.nextDailyTrigger(alarm.optLong("time", now), now));
+                long trigger = AlarmModule.planTrigger(context, alarm, now);
+                AlarmStore.updateTime(context, id, alarm.getLong("time"), trigger < 0);
+                AlarmModule.applyTrigger(context, id, trigger);
+                Log.d("AlarmReceiver", "Alarm " + id + " suspended, deferred to " + trigger);
+            } catch (Exception e) {
+                Log.e("AlarmReceiver", "Failed to defer suspended alarm " + id, e);
+            }
+            return;
+        }
 
         Intent serviceIntent = new Intent(context, AlarmService.class);
-        serviceIntent.putExtra("title", title);
-        serviceIntent.putExtra("body", body);
-        serviceIntent.putExtra("habitId", habitId);
-        serviceIntent.putExtra("id", id);
+        serviceIntent.putExtra(AlarmStore.EXTRA_ID, id);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             context.startForegroundService(serviceIntent);
         } else {
             context.startService(serviceIntent);
         }
+
+        // 用户很可能从闹钟界面进入应用，提前预热 WebView
+        WebViewPrewarmer.prewarm(context);
     }
 }
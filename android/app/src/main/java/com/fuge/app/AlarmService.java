@@ -20,6 +20,8 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import org.json.JSONObject;
+
 public class AlarmService extends Service {
     private Ringtone ringtone;
     private Vibrator vibrator;
@@ -46,18 +48,20 @@ public class AlarmService extends Service {
             return START_NOT_STICKY;
         }
 
-        String title = intent.getStringExtra("title");
-        String body = intent.getStringExtra("body");
-        String habitId = intent.getStringExtra("habitId");
-        int id = intent.getIntExtra("id", 0);
+        // 触发时再从 AlarmStore 读取内容，Intent 只携带 ID
+        int id = intent.getIntExtra(AlarmStore.EXTRA_ID, 0);
+        JSONObject alarm = AlarmStore.find(this, id);
+        String title = alarm != null ? alarm.optString("title", "微习惯提醒") : "微习惯提醒";
+        String body = alarm != null ? alarm.optString("body", "该行动了！小习惯，大改变。") : "该行动了！小习惯，大改变。";
+        String sound = alarm != null ? alarm.optString("sound", null) : null;
 
-        startForeground(id, buildNotification(title, body, habitId, id));
-        startAlarm();
+        startForeground(id, buildNotification(title, body, id));
+        startAlarm(sound);
 
         return START_STICKY;
     }
 
-    private Notification buildNotification(String title, String body, String habitId, int id) {
+    private Notification buildNotification(String title, String body, int id) {
         String channelId = "execution_alarm";
         NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
@@ -76,10 +80,7 @@ public class AlarmService extends Service {
         }
 
         Intent activityIntent = new Intent(this, AlarmActivity.class);
-        activityIntent.putExtra("title", title);
-        activityIntent.putExtra("body", body);
-        activityIntent.putExtra("habitId", habitId);
-        activityIntent.putExtra("id", id);
+        activityIntent.putExtra(AlarmStore.EXTRA_ID, id);
         activityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
         PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
@@ -107,15 +108,19 @@ public class AlarmService extends Service {
                 .setOngoing(true)
                 .setAutoCancel(false)
                 .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Dismiss / 关闭", stopPendingIntent)
+                .setContentIntent(fullScreenPendingIntent)
                 .setFullScreenIntent(fullScreenPendingIntent, true);
 
         return builder.build();
     }
 
-    private void startAlarm() {
+    private void startAlarm(String sound) {
         // Play Sound
         try {
-            Uri alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+            Uri alarmUri = sound != null ? Uri.parse(sound) : null;
+            if (alarmUri == null) {
+                alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+            }
             if (alarmUri == null) {
                 alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
             }
@@ -0,0 +1,384 @@
+package com.fuge.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * AlarmStore - 闹钟本地存储
+ * PendingIntent 只携带闹钟 ID，标题、内容、铃声等在触发时从这里读取，
+ * 因此修改提醒内容不需要重新注册系统闹钟
+ */
+public class AlarmStore {
+    private static final String TAG = "AlarmStore";
+    private static final String PREFS_NAME = "FugeAlarmPrefs";
+    private static final String KEY_ALARMS = "saved_alarms";
+    private static final String KEY_SUSPENSIONS = "suspension_windows";
+    private static final String KEY_WATCHDOG_METRICS = "watchdog_metrics";
+    private static final String KEY_LAUNCH_METRICS = "launch_metrics";
+
+    /** Intent 中唯一携带的字段：闹钟 ID */
+    public static final String EXTRA_ID = "id";
+
+    /** 启动耗时分类：冷启动且已预热 / 冷启动未预热 / 应用已在运行 */
+    public static final String LAUNCH_PREWARMED = "prewarmed";
+    public static final String LAUNCH_COLD = "cold";
+    public static final String LAUNCH_WARM = "warm";
+
+    /**
+     * 读取全部已保存的闹钟
+     */
+    public static JSONArray loadAll(Context context) {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            return new JSONArray(prefs.getString(KEY_ALARMS, "[]"));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load alarms", e);
+            return new JSONArray();
+        }
+    }
+
+    /**
+     * 覆盖写入全部闹钟
+     */
+    public static void saveAll(Context context, JSONArray alarms) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putString(KEY_ALARMS, alarms.toString()).apply();
+    }
+
+    /**
+     * 按 ID 查找闹钟，不存在时返回 null
+     */
+    public static JSONObject find(Context context, int id) {
+        try {
+            JSONArray alarms = loadAll(context);
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject alarm = alarms.getJSONObject(i);
+                if (alarm.getInt("id") == id) {
+                    return alarm;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to find alarm " + id, e);
+        }
+        return null;
+    }
+
+    /**
+     * 保存闹钟（同 ID 覆盖）。sound 为 null 时保留原有铃声设置
+     */
+    public static void put(Context context, int id, long time, String title, String body, String habitId,
+            String aspiration, String sound) {
+        try {
+            JSONArray alarms = loadAll(context);
+            JSONArray updated = new JSONArray();
+            String previousSound = null;
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject alarm = alarms.getJSONObject(i);
+                if (alarm.getInt("id") != id) {
+                    updated.put(alarm);
+                } else {
+                    previousSound = alarm.optString("sound", null);
+                }
+            }
+
+            JSONObject newAlarm = new JSONObject();
+            newAlarm.put("id", id);
+            newAlarm.put("time", time);
+            newAlarm.put("title", title);
+            newAlarm.put("body", body);
+            newAlarm.put("habitId", habitId);
+            newAlarm.put("aspiration", aspiration);
+            String effectiveSound = sound != null ? sound : previousSound;
+            if (effectiveSound != null) {
+                newAlarm.put("sound", effectiveSound);
+            }
+            updated.put(newAlarm);
+
+            saveAll(context, updated);
+            Log.d(TAG, "Saved alarm: " + newAlarm.toString());
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to save alarm", e);
+        }
+    }
+
+    /**
+     * 按 ID 移除闹钟
+     */
+    public static void remove(Context context, int id) {
+        try {
+            JSONArray alarms = loadAll(context);
+            JSONArray updated = new JSONArray();
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject alarm = alarms.getJSONObject(i);
+                if (alarm.getInt("id") != id) {
+                    updated.put(alarm);
+                }
+            }
+            saveAll(context, updated);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to remove alarm " + id, e);
+        }
+    }
+
+    /**
+     * 原地修改闹钟内容（不涉及 AlarmManager）。参数为 null 表示不修改该字段，
+     * sound 传空字符串表示恢复系统默认铃声。返回修改后的闹钟，不存在时返回 null
+     */
+    public static JSONObject updateContent(Context context, int id, String title, String body, String sound) {
+        try {
+            JSONArray alarms = loadAll(context);
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject alarm = alarms.getJSONObject(i);
+                if (alarm.getInt("id") != id) {
+                    continue;
+                }
+                if (title != null) {
+                    alarm.put("title", title);
+                }
+                if (body != null) {
+                    alarm.put("body", body);
+                }
+                if (sound != null) {
+                    if (sound.isEmpty()) {
+                        alarm.remove("sound");
+                    } else {
+                        alarm.put("sound", sound);
+                    }
+                }
+                saveAll(context, alarms);
+                return alarm;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to update alarm content " + id, e);
+        }
+        return null;
+    }
+
+    /**
+     * 只修改闹钟的下次触发时间。parked 为 true 表示闹钟因无结束时间的暂停窗口而未注册，
+     * 等 clearSuspension 时再重新注册
+     */
+    public static void updateTime(Context context, int id, long time, boolean parked) {
+        try {
+            JSONArray alarms = loadAll(context);
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject alarm = alarms.getJSONObject(i);
+                if (alarm.getInt("id") == id) {
+                    alarm.put("time", time);
+                    if (parked) {
+                        alarm.put("parked", true);
+                    } else {
+                        alarm.remove("parked");
+                    }
+                    saveAll(context, alarms);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to update alarm time " + id, e);
+        }
+    }
+
+    /**
+     * 读取全部暂停窗口：{ name: { start, end, aspiration?, habitId? } }
+     * end 为 0 表示直到手动恢复
+     */
+    public static JSONObject loadSuspensions(Context context) {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            return new JSONObject(prefs.getString(KEY_SUSPENSIONS, "{}"));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load suspensions", e);
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * 新增或覆盖一个命名暂停窗口，aspiration 和 habitId 都为 null 时为全局窗口。
+     * 顺带清理已过期的窗口
+     */
+    public static void putSuspension(Context context, String name, long start, long end, String aspiration,
+            String habitId) {
+        try {
+            JSONObject windows = loadSuspensions(context);
+            long now = System.currentTimeMillis();
+            JSONArray names = windows.names();
+            if (names != null) {
+                for (int i = 0; i < names.length(); i++) {
+                    String key = names.getString(i);
+                    long windowEnd = windows.getJSONObject(key).optLong("end", 0);
+                    if (windowEnd > 0 && windowEnd <= now) {
+                        windows.remove(key);
+                    }
+                }
+            }
+
+            JSONObject window = new JSONObject();
+            window.put("start", start);
+            window.put("end", end);
+            window.put("aspiration", aspiration);
+            window.put("habitId", habitId);
+            windows.put(name, window);
+
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putString(KEY_SUSPENSIONS, windows.toString()).apply();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to save suspension " + name, e);
+        }
+    }
+
+    /**
+     * 移除命名暂停窗口
+     */
+    public static void removeSuspension(Context context, String name) {
+        JSONObject windows = loadSuspensions(context);
+        windows.remove(name);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putString(KEY_SUSPENSIONS, windows.toString()).apply();
+    }
+
+    /**
+     * 判断闹钟在指定时间是否处于暂停窗口内。
+     * 窗口数量与习惯数量无关（通常只有几个），触发时只需一次读取
+     */
+    public static boolean isSuspended(Context context, JSONObject alarm, long time) {
+        return suspensionEnd(context, alarm, time) != 0;
+    }
+
+    /**
+     * 返回覆盖指定时间的暂停窗口的结束时间：不在任何窗口内返回 0，
+     * 处于无结束时间的窗口内返回 -1，多个窗口重叠时取最晚的结束时间
+     */
+    public static long suspensionEnd(Context context, JSONObject alarm, long time) {
+        long latestEnd = 0;
+        try {
+            JSONObject windows = loadSuspensions(context);
+            JSONArray names = windows.names();
+            if (names == null) {
+                return 0;
+            }
+
+            String aspiration = alarm.optString("aspiration", null);
+            String habitId = alarm.optString("habitId", null);
+            for (int i = 0; i < names.length(); i++) {
+                JSONObject window = windows.getJSONObject(names.getString(i));
+                long start = window.optLong("start", 0);
+                long end = window.optLong("end", 0);
+                if (time < start || (end > 0 && time >= end)) {
+                    continue;
+                }
+
+                String scopeAspiration = window.optString("aspiration", null);
+                String scopeHabit = window.optString("habitId", null);
+                boolean global = scopeAspiration == null && scopeHabit == null;
+                if (global
+                        || (scopeAspiration != null && scopeAspiration.equals(aspiration))
+                        || (scopeHabit != null && scopeHabit.equals(habitId))) {
+                    if (end == 0) {
+                        return -1;
+                    }
+                    latestEnd = Math.max(latestEnd, end);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to check suspensions", e);
+        }
+        return latestEnd;
+    }
+
+    /**
+     * 记录一次健康检查结果：累计运行次数、发现丢失数、修复数
+     */
+    public static void recordWatchdogRun(Context context, int checked, int dropped, int repaired) {
+        try {
+            JSONObject metrics = loadWatchdogMetrics(context);
+            long now = System.currentTimeMillis();
+            metrics.put("runs", metrics.optLong("runs", 0) + 1);
+            metrics.put("drops", metrics.optLong("drops", 0) + dropped);
+            metrics.put("repairs", metrics.optLong("repairs", 0) + repaired);
+            metrics.put("lastRun", now);
+            metrics.put("lastChecked", checked);
+            metrics.put("lastDropped", dropped);
+            metrics.put("lastRepaired", repaired);
+            if (dropped > 0) {
+                metrics.put("lastDrop", now);
+            }
+
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putString(KEY_WATCHDOG_METRICS, metrics.toString()).apply();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to record watchdog metrics", e);
+        }
+    }
+
+    /**
+     * 记录一次失败的健康检查（未完成探测或重新注册），与正常运行分开统计
+     */
+    public static void recordWatchdogFailure(Context context, String error) {
+        try {
+            JSONObject metrics = loadWatchdogMetrics(context);
+            metrics.put("failures", metrics.optLong("failures", 0) + 1);
+            metrics.put("lastFailure", System.currentTimeMillis());
+            metrics.put("lastError", error);
+
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putString(KEY_WATCHDOG_METRICS, metrics.toString()).apply();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to record watchdog failure", e);
+        }
+    }
+
+    /**
+     * 读取健康检查统计
+     */
+    public static JSONObject loadWatchdogMetrics(Context context) {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            return new JSONObject(prefs.getString(KEY_WATCHDOG_METRICS, "{}"));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load watchdog metrics", e);
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * 记录一次从闹钟界面进入应用到习惯卡片可交互的耗时，按启动方式（LAUNCH_*）分别统计
+     */
+    public static void recordLaunchLatency(Context context, long latencyMs, String bucket) {
+        try {
+            JSONObject metrics = loadLaunchMetrics(context);
+            JSONObject stats = metrics.optJSONObject(bucket);
+            if (stats == null) {
+                stats = new JSONObject();
+            }
+            long count = stats.optLong("count", 0) + 1;
+            double avg = stats.optDouble("avgMs", 0);
+            stats.put("count", count);
+            stats.put("lastMs", latencyMs);
+            stats.put("avgMs", avg + (latencyMs - avg) / count);
+            metrics.put(bucket, stats);
+
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putString(KEY_LAUNCH_METRICS, metrics.toString()).apply();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to record launch latency", e);
+        }
+    }
+
+    /**
+     * 读取启动耗时统计：{ prewarmed: {count, lastMs, avgMs}, cold: {...}, warm: {...} }
+     */
+    public static JSONObject loadLaunchMetrics(Context context) {
+        try {
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            return new JSONObject(prefs.getString(KEY_LAUNCH_METRICS, "{}"));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load launch metrics", e);
+            return new JSONObject();
+        }
+    }
+}
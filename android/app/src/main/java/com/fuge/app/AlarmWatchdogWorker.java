@@ -0,0 +1,56 @@
+package com.fuge.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AlarmWatchdogWorker - 闹钟健康检查
+ * 部分厂商的省电策略或应用更新会静默清除 AlarmManager 注册，
+ * 这里定期对比本地存储与实际注册情况，只重新注册丢失的闹钟
+ */
+public class AlarmWatchdogWorker extends Worker {
+    private static final String TAG = "AlarmWatchdogWorker";
+    private static final String WORK_NAME = "alarm_watchdog";
+    private static final long INTERVAL_HOURS = 3;
+
+    public AlarmWatchdogWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        try {
+            AlarmModule.repairAlarms(getApplicationContext());
+            return Result.success();
+        } catch (Exception e) {
+            // repairAlarms 已记录失败，按 WorkManager 的退避策略稍后重试
+            Log.e(TAG, "Watchdog run failed, will retry", e);
+            return Result.retry();
+        }
+    }
+
+    /**
+     * 注册周期性检查（非精确，由系统择机执行）。已存在时保持不变
+     */
+    public static void schedule(Context context) {
+        try {
+            PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                    AlarmWatchdogWorker.class, INTERVAL_HOURS, TimeUnit.HOURS)
+                    .build();
+            WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                    WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule watchdog", e);
+        }
+    }
+}
@@ -7,7 +7,7 @@ import android.util.Log;
 
 /**
  * BootReceiver - 开机自启动接收器
- * 在设备重启后自动恢复所有已保存的闹钟
+ * 在设备重启后自动恢复所有已保存的闹钟；应用更新后只补注册丢失的闹钟
  */
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "BootReceiver";
@@ -25,6 +25,17 @@ public class BootReceiver extends BroadcastReceiver {
 
             // 恢复所有已保存的闹钟
             AlarmModule.restoreAlarms(context);
+            AlarmWatchdogWorker.schedule(context);
+        } else if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            Log.d(TAG, "Package replaced, repairing alarms...");
+
+            try {
+                AlarmModule.repairAlarms(context);
+            } catch (Exception e) {
+                // 已记录为失败的检查，周期任务稍后会再次检查
+                Log.e(TAG, "Failed to repair alarms after update", e);
+            }
+            AlarmWatchdogWorker.schedule(context);
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.fuge.app;
 
+import android.content.Intent;
 import android.os.Bundle;
 import com.getcapacitor.BridgeActivity;
 
@@ -8,5 +9,33 @@ public class MainActivity extends BridgeActivity {
     public void onCreate(Bundle savedInstanceState) {
         registerPlugin(AlarmModule.class);
         super.onCreate(savedInstanceState);
+        // 冷启动：网页加载完成后通过 AlarmModule.consumeLaunchHabit 读取
+        String bucket = WebViewPrewarmer.isWarmed() ? AlarmStore.LAUNCH_PREWARMED : AlarmStore.LAUNCH_COLD;
+        handleLaunchIntent(getIntent(), bucket);
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        // 应用已在运行：直接通知网页端定位习惯，耗时单独统计，不计入冷启动
+        if (handleLaunchIntent(intent, AlarmStore.LAUNCH_WARM) && bridge != null) {
+            bridge.triggerWindowJSEvent("fugeOpenHabit");
+        }
+    }
+
+    /**
+     * 记录来自闹钟界面的深链接，返回是否携带了习惯 ID
+     */
+    private boolean handleLaunchIntent(Intent intent, String bucket) {
+        if (intent == null) {
+            return false;
+        }
+        String habitId = intent.getStringExtra(AlarmModule.EXTRA_OPEN_HABIT);
+        long launchAt = intent.getLongExtra(AlarmModule.EXTRA_LAUNCH_AT, 0);
+        if (habitId == null && launchAt == 0) {
+            return false;
+        }
+        AlarmModule.setPendingLaunch(habitId, launchAt, bucket);
+        return habitId != null;
     }
 }
@@ -0,0 +1,75 @@
+package com.fuge.app;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebSettings;
+
+/**
+ * WebViewPrewarmer - 闹钟触发时预热 WebView
+ * 用户从闹钟界面进入应用时，最耗时的是 WebView 内核加载。
+ * 闹钟响起几秒后（避开闹钟界面的首帧绘制）在主线程提前加载内核，
+ * 仅在内存充足且未开启省电模式时执行，每个进程只执行一次
+ */
+public class WebViewPrewarmer {
+    private static final String TAG = "WebViewPrewarmer";
+    // 可用内存低于该值时不预热
+    private static final long MIN_AVAIL_MEM_BYTES = 256L * 1024 * 1024;
+    // 内核加载会占用主线程几百毫秒，等闹钟界面显示后再执行
+    private static final long PREWARM_DELAY_MS = 3000;
+
+    private static volatile boolean started = false;
+    private static volatile boolean warmed = false;
+
+    /**
+     * 本进程内预热是否已完成（用于对比有无预热时的启动耗时）
+     */
+    public static boolean isWarmed() {
+        return warmed;
+    }
+
+    public static void prewarm(Context context) {
+        if (started) {
+            return;
+        }
+        Context app = context.getApplicationContext();
+        if (isConstrained(app)) {
+            Log.d(TAG, "Device constrained, skipping prewarm");
+            return;
+        }
+        started = true;
+
+        // WebView 内核只能在主线程初始化
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                WebSettings.getDefaultUserAgent(app);
+                warmed = true;
+                Log.d(TAG, "WebView prewarmed in " + (SystemClock.elapsedRealtime() - start) + "ms");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to prewarm WebView", e);
+                started = false;
+            }
+        }, PREWARM_DELAY_MS);
+    }
+
+    private static boolean isConstrained(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null) {
+            if (am.isLowRamDevice()) {
+                return true;
+            }
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            am.getMemoryInfo(memoryInfo);
+            if (memoryInfo.lowMemory || memoryInfo.availMem < MIN_AVAIL_MEM_BYTES) {
+                return true;
+            }
+        }
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return pm != null && pm.isPowerSaveMode();
+    }
+}
@@ -0,0 +1,456 @@
+// AI 请求链路检查：npm run check:ai（需先 npm install）
+// 用项目自带的 typescript 把 aiStream.ts / aiCache.ts / aiService.ts 转译成 JS 后直接在 Node 中运行：
+// supabaseStorage 换成内存里的 stub，AI 服务商换成本地 OpenAI 兼容的 stub 服务器，
+// 验证 SSE 解析、配置与响应缓存、服务商健康状态和故障切换
+import assert from 'node:assert/strict';
+import { mkdtemp, readFile, rm, writeFile } from 'node:fs/promises';
+import http from 'node:http';
+import { tmpdir } from 'node:os';
+import path from 'node:path';
+import { fileURLToPath, pathToFileURL } from 'node:url';
+
+const ts = await import('typescript').then(m => m.default, () => null);
+if (!ts) {
+    console.error('找不到 typescript，请先运行 npm install');
+    process.exit(1);
+}
+
+const root = path.resolve(path.dirname(fileURLToPath(import.meta.url)), '..');
+const outDir = await mkdtemp(path.join(tmpdir(), 'fogg-ai-check-'));
+
+// 所有模块都写到同一个临时目录，相对导入统一改写为同目录下的 .mjs（包括下面的 supabaseStorage stub）
+async function writeModule(name, code) {
+    const file = path.join(outDir, `${name}.mjs`);
+    await writeFile(file, code.replace(/from '\.\.?\/(?:[\w-]+\/)*([\w-]+)'/g, "from './$1.mjs'"));
+    return pathToFileURL(file).href;
+}
+
+async function loadModule(relativePath) {
+    const source = await readFile(path.join(root, relativePath), 'utf8');
+    const { outputText } = ts.transpileModule(source, {
+        compilerOptions: { module: ts.ModuleKind.ESNext, target: ts.ScriptTarget.ES2022 }
+    });
+    return import(await writeModule(path.basename(relativePath, '.ts'), outputText));
+}
+
+// 与 src/hooks/supabaseStorage.ts 中 cloudAIConfigs 的缓存失效行为保持一致
+const storageStub = `
+import { invalidateActiveConfig } from '../services/aiCache';
+export const storage = { configs: [], activeId: null, calls: { getActive: 0, fetchAll: 0, setActive: [] } };
+export const cloudAIConfigs = {
+    async getActive() {
+        storage.calls.getActive++;
+        return storage.configs.find(c => c.id === storage.activeId) || null;
+    },
+    async fetchAll() {
+        storage.calls.fetchAll++;
+        return storage.configs.map(c => ({ ...c, is_active: c.id === storage.activeId }));
+    },
+    async setActive(id) {
+        storage.calls.setActive.push(id);
+        storage.activeId = id;
+        invalidateActiveConfig();
+        return true;
+    }
+};
+export const cloudSettings = { async fetchAll() { return {}; } };
+`;
+
+const { isEventStream, readChatStream, extractPartialJsonField } = await loadModule('src/services/aiStream.ts');
+const aiCache = await loadModule('src/services/aiCache.ts');
+const {
+    cachedResponse, clearResponseCache, getCachedConfig, getCachedConfigList, invalidateActiveConfig,
+    invalidateConfigCache, markConfigFailure, markConfigSuccess, isConfigHealthy, responseCacheKey, resetAICaches
+} = aiCache;
+const { storage } = await import(await writeModule('supabaseStorage', storageStub));
+const { diagnosisChat, getPraise } = await loadModule('src/services/aiService.ts');
+
+// 可拨动的时钟，用于验证 TTL 与冷却时间
+const realNow = Date.now;
+let clockOffset = 0;
+Date.now = () => realNow() + clockOffset;
+
+const sse = (content) => `data: ${JSON.stringify({ choices: [{ delta: { content } }] })}\n\n`;
+const sleep = (ms) => new Promise(resolve => setTimeout(resolve, ms));
+
+// 每个路由返回按顺序写出的数据块，块之间稍作停顿，模拟事件在网络上被拆开
+const routes = {
+    '/split': {
+        type: 'text/event-stream',
+        chunks: (() => {
+            const body = sse('你好') + ': keep-alive\n\n' + sse('，世界').replace(/\n/g, '\r\n') + 'data: [DONE]\n\n' + sse('不应出现');
+            // 按 7 字节切开，事件边界和多字节字符都会落在块中间
+            const bytes = Buffer.from(body);
+            const parts = [];
+            for (let i = 0; i < bytes.length; i += 7) parts.push(bytes.subarray(i, i + 7));
+            return parts;
+        })()
+    },
+    '/no-trailing-newline': {
+        type: 'text/event-stream',
+        chunks: [sse('a'), `data: ${JSON.stringify({ choices: [{ delta: { content: 'b' } }] })}`]
+    },
+    '/json': {
+        type: 'application/json; charset=utf-8',
+        chunks: [JSON.stringify({ choices: [{ message: { content: '非流式回复' } }] })]
+    },
+    // 部分服务商在 HTTP 200 中返回模型错误
+    '/json-error': {
+        type: 'application/json',
+        chunks: [JSON.stringify({ status: '435', msg: 'Model not support' })]
+    },
+    '/error': {
+        type: 'text/event-stream',
+        chunks: [sse('部分'), `data: ${JSON.stringify({ error: { message: 'quota exceeded' } })}\n\n`]
+    }
+};
+
+// 模拟的 AI 服务商：/provider/<名称>/chat/completions，行为由 providers[名称] 决定
+const providers = {};
+let providerHits = [];
+
+async function handleProvider(req, res, name) {
+    let raw = '';
+    for await (const chunk of req) raw += chunk;
+    const body = JSON.parse(raw);
+    const provider = providers[name] || { status: 404 };
+    providerHits.push({ name, auth: req.headers.authorization, stream: !!body.stream });
+
+    // 忽略 stream 参数、直接返回 JSON 的服务商
+    if (provider.json) {
+        res.writeHead(200, { 'Content-Type': 'application/json' });
+        res.end(JSON.stringify(provider.json));
+        return;
+    }
+    if (provider.status !== 200) {
+        res.writeHead(provider.status, { 'Content-Type': 'application/json' });
+        res.end(JSON.stringify({ error: { message: `stub ${name} status ${provider.status}` } }));
+        return;
+    }
+    if (!body.stream) {
+        res.writeHead(200, { 'Content-Type': 'application/json' });
+        res.end(JSON.stringify({ choices: [{ message: { content: provider.reply } }] }));
+        return;
+    }
+    res.writeHead(200, { 'Content-Type': 'text/event-stream' });
+    const third = Math.ceil(provider.reply.length / 3);
+    for (let i = 0; i < provider.reply.length; i += third) {
+        res.write(sse(provider.reply.slice(i, i + third)));
+        await sleep(2);
+    }
+    res.end('data: [DONE]\n\n');
+}
+
+const server = http.createServer(async (req, res) => {
+    const providerMatch = req.url.match(/^\/provider\/(\w+)\/chat\/completions$/);
+    if (providerMatch) {
+        await handleProvider(req, res, providerMatch[1]);
+        return;
+    }
+    const route = routes[req.url];
+    if (!route) {
+        res.writeHead(404).end();
+        return;
+    }
+    res.writeHead(200, { 'Content-Type': route.type });
+    for (const chunk of route.chunks) {
+        res.write(chunk);
+        await sleep(2);
+    }
+    res.end();
+});
+await new Promise(resolve => server.listen(0, '127.0.0.1', resolve));
+const baseUrl = `http://127.0.0.1:${server.address().port}`;
+
+const checks = [];
+const check = (name, fn) => checks.push({ name, fn });
+
+// 重置全部缓存与 stub 状态，ids 中第一个为激活配置
+function useConfigs(...ids) {
+    resetAICaches();
+    clockOffset = 0;
+    providerHits = [];
+    storage.configs = ids.map((id, priority) => ({
+        id, name: id, api_key: `key-${id}`, base_url: `${baseUrl}/provider/${id}`,
+        model_name: 'stub-model', is_active: false, priority
+    }));
+    storage.activeId = ids[0];
+    storage.calls = { getActive: 0, fetchAll: 0, setActive: [] };
+}
+
+const habit = { anchor: '刷完牙后', tiny_behavior: '做 2 个深蹲' };
+
+check('SSE events split across chunks, comments skipped, stops at [DONE]', async () => {
+    const updates = [];
+    let activity = 0;
+    const text = await readChatStream(await fetch(`${baseUrl}/split`), t => updates.push(t), () => activity++);
+    assert.equal(text, '你好，世界');
+    assert.deepEqual(updates, ['你好', '你好，世界']);
+    assert.ok(activity > 1);
+});
+
+check('last event without trailing blank line is still parsed', async () => {
+    const text = await readChatStream(await fetch(`${baseUrl}/no-trailing-newline`), () => {});
+    assert.equal(text, 'ab');
+});
+
+check('JSON responses are not treated as event streams', async () => {
+    assert.equal(isEventStream(await fetch(`${baseUrl}/split`)), true);
+    assert.equal(isEventStream(await fetch(`${baseUrl}/json`)), false);
+    const errorResponse = await fetch(`${baseUrl}/json-error`);
+    assert.equal(isEventStream(errorResponse), false);
+    assert.deepEqual(await errorResponse.json(), { status: '435', msg: 'Model not support' });
+});
+
+check('error chunk in the stream rejects', async () => {
+    await assert.rejects(readChatStream(await fetch(`${baseUrl}/error`), () => {}), /quota exceeded/);
+});
+
+check('partial JSON field extraction decodes escapes in one pass', () => {
+    const field = (raw) => extractPartialJsonField(`{"analysis": "${raw}`, 'analysis');
+    assert.equal(field('第一行\\n第二'), '第一行\n第二');
+    assert.equal(field('引号\\"'), '引号"');
+    // 转义的反斜杠后面跟 n：是反斜杠加字母 n，不是换行
+    assert.equal(field('C:\\\\new'), 'C:\\new');
+    assert.equal(field('a\\tb\\rc\\/d'), 'a\tb\rc/d');
+    assert.equal(field('\\u4f60\\u597d'), '你好');
+    // 末尾未收全的转义先丢弃
+    assert.equal(field('你\\u59'), '你');
+    assert.equal(field('你\\'), '你');
+    assert.equal(field('\\\\u4f60'), '\\u4f60');
+    assert.equal(extractPartialJsonField('{"other": "x"', 'analysis'), '');
+    // 与 JSON.parse 结果一致
+    const complete = JSON.stringify({ analysis: 'x\\ny\n"z"\t/\u00e9😀' });
+    assert.equal(extractPartialJsonField(complete, 'analysis'), JSON.parse(complete).analysis);
+});
+
+check('concurrent identical requests share one fetch, then hit the cache', async () => {
+    clearResponseCache();
+    let calls = 0;
+    const fetcher = async () => {
+        calls++;
+        await sleep(20);
+        return 'shared';
+    };
+    const results = await Promise.all([
+        cachedResponse('k', 60000, fetcher),
+        cachedResponse('k', 60000, fetcher)
+    ]);
+    assert.deepEqual(results, ['shared', 'shared']);
+    assert.equal(calls, 1);
+    assert.equal(await cachedResponse('k', 60000, fetcher), 'shared');
+    assert.equal(calls, 1);
+});
+
+check('non-shared request neither joins nor exposes its in-flight fetch', async () => {
+    clearResponseCache();
+    let calls = 0;
+    const controller = new AbortController();
+    const cancellable = cachedResponse('k', 60000, () => new Promise((resolve, reject) => {
+        calls++;
+        controller.signal.addEventListener('abort', () => reject(new Error('aborted')));
+    }), false);
+    const shared = cachedResponse('k', 60000, async () => {
+        calls++;
+        await sleep(10);
+        return 'shared';
+    });
+    controller.abort();
+    await assert.rejects(cancellable, /aborted/);
+    assert.equal(await shared, 'shared');
+    assert.equal(calls, 2);
+    // 已完成的结果对不共享的请求同样可用
+    assert.equal(await cachedResponse('k', 60000, async () => 'unused', false), 'shared');
+});
+
+check('expired entries are fetched again', async () => {
+    clearResponseCache();
+    let calls = 0;
+    const fetcher = async () => `v${++calls}`;
+    assert.equal(await cachedResponse('ttl', 1, fetcher), 'v1');
+    await sleep(5);
+    assert.equal(await cachedResponse('ttl', 1, fetcher), 'v2');
+});
+
+check('config cache: concurrent loads share one loader call, reload after TTL', async () => {
+    useConfigs();
+    let loads = 0;
+    const loader = async () => {
+        loads++;
+        await sleep(10);
+        return { apiKey: 'k', baseUrl: 'u', model: 'm', configId: `c${loads}` };
+    };
+    const [first, second] = await Promise.all([getCachedConfig(loader), getCachedConfig(loader)]);
+    assert.equal(loads, 1);
+    assert.equal(first, second);
+    assert.equal((await getCachedConfig(loader)).configId, 'c1');
+    clockOffset = 10 * 60 * 1000 + 1;
+    assert.equal((await getCachedConfig(loader)).configId, 'c2');
+    assert.equal(loads, 2);
+});
+
+check('config cache: invalidation during a load discards its result', async () => {
+    useConfigs();
+    let releaseStale;
+    const stale = getCachedConfig(() => new Promise(resolve => {
+        releaseStale = () => resolve({ apiKey: 'old', baseUrl: 'u', model: 'm' });
+    }));
+    invalidateConfigCache();
+    const fresh = getCachedConfig(async () => ({ apiKey: 'new', baseUrl: 'u', model: 'm' }));
+    releaseStale();
+    assert.equal((await stale).apiKey, 'old');
+    assert.equal((await fresh).apiKey, 'new');
+    assert.equal((await getCachedConfig(async () => assert.fail('should be cached'))).apiKey, 'new');
+});
+
+check('config list survives an active-config switch but not config edits', async () => {
+    useConfigs();
+    let loads = 0;
+    const loader = async () => [++loads];
+    await getCachedConfigList(loader);
+    invalidateActiveConfig();
+    assert.deepEqual(await getCachedConfigList(loader), [1]);
+    invalidateConfigCache();
+    assert.deepEqual(await getCachedConfigList(loader), [2]);
+});
+
+check('provider cooldown doubles per failure, is capped, and clears on success', () => {
+    useConfigs();
+    markConfigFailure('p');
+    assert.equal(isConfigHealthy('p'), false);
+    clockOffset = 59 * 1000;
+    assert.equal(isConfigHealthy('p'), false);
+    clockOffset = 61 * 1000;
+    assert.equal(isConfigHealthy('p'), true);
+
+    markConfigFailure('p'); // 第二次失败：2 分钟
+    clockOffset += 119 * 1000;
+    assert.equal(isConfigHealthy('p'), false);
+    clockOffset += 2 * 1000;
+    assert.equal(isConfigHealthy('p'), true);
+
+    // 多次失败后封顶 30 分钟
+    for (let i = 0; i < 20; i++) markConfigFailure('p');
+    clockOffset += 29 * 60 * 1000;
+    assert.equal(isConfigHealthy('p'), false);
+    clockOffset += 60 * 1000 + 1;
+    assert.equal(isConfigHealthy('p'), true);
+
+    markConfigFailure('p');
+    markConfigSuccess('p');
+    assert.equal(isConfigHealthy('p'), true);
+});
+
+check('response cache key depends on endpoint, model and payload but not the API key', () => {
+    const payload = { messages: [{ role: 'user', content: 'hi' }], temperature: 0.7 };
+    const a = responseCacheKey({ apiKey: 'key-a', baseUrl: 'u', model: 'm' }, payload);
+    assert.equal(a, responseCacheKey({ apiKey: 'key-b', baseUrl: 'u', model: 'm' }, payload));
+    assert.notEqual(a, responseCacheKey({ apiKey: 'key-a', baseUrl: 'u', model: 'm2' }, payload));
+    assert.notEqual(a, responseCacheKey({ apiKey: 'key-a', baseUrl: 'u', model: 'm' }, { ...payload, temperature: 0.8 }));
+    assert.ok(!a.includes('key-a'));
+});
+
+check('chat request: non-streaming reply goes to the active config and is cached', async () => {
+    useConfigs('a');
+    providers.a = { status: 200, reply: '{"message": "太棒了", "emoji": "🎉"}' };
+    assert.deepEqual(await getPraise('深蹲'), { message: '太棒了', emoji: '🎉' });
+    assert.deepEqual(await getPraise('深蹲'), { message: '太棒了', emoji: '🎉' });
+    assert.deepEqual(providerHits, [{ name: 'a', auth: 'Bearer key-a', stream: false }]);
+    assert.equal(storage.calls.getActive, 1);
+});
+
+check('chat request: streaming reply hides the [SUGGESTION] block from partial updates', async () => {
+    useConfigs('a');
+    providers.a = { status: 200, reply: '试试更小的版本吧[SUGGESTION]{"anchor": "起床后", "tiny_behavior": "1 个深蹲"}[/SUGGESTION]' };
+    const partials = [];
+    const result = await diagnosisChat(habit, [{ role: 'user', content: '总是忘' }], { onReply: t => partials.push(t) });
+    assert.equal(result.reply, '试试更小的版本吧');
+    assert.deepEqual(result.suggestion, { anchor: '起床后', tiny_behavior: '1 个深蹲' });
+    assert.ok(partials.length >= 1);
+    assert.ok(partials.every(t => !t.includes('[')));
+    assert.equal(providerHits.length, 1);
+    assert.equal(providerHits[0].stream, true);
+});
+
+check('failover: 429s switch configs without refetching the list or the active config', async () => {
+    useConfigs('a', 'b', 'c');
+    providers.a = { status: 429 };
+    providers.b = { status: 429 };
+    providers.c = { status: 200, reply: '好的' };
+    const result = await diagnosisChat(habit, [{ role: 'user', content: '在吗' }]);
+    assert.equal(result.reply, '好的');
+    assert.deepEqual(providerHits.map(h => h.auth), ['Bearer key-a', 'Bearer key-b', 'Bearer key-c']);
+    assert.deepEqual(storage.calls.setActive, ['b', 'c']);
+    assert.equal(storage.calls.fetchAll, 1);
+    assert.equal(storage.calls.getActive, 1);
+    assert.equal(isConfigHealthy('a'), false);
+});
+
+check('streaming request: JSON reply from a provider that ignores stream is delivered once', async () => {
+    useConfigs('a');
+    providers.a = { json: { choices: [{ message: { content: '不支持流式' } }] } };
+    const partials = [];
+    const result = await diagnosisChat(habit, [{ role: 'user', content: '在吗' }], { onReply: t => partials.push(t) });
+    assert.equal(result.reply, '不支持流式');
+    assert.deepEqual(partials, ['不支持流式']);
+    assert.equal(isConfigHealthy('a'), true);
+});
+
+check('streaming request: HTTP 200 model error marks the config and fails over', async () => {
+    useConfigs('a', 'b');
+    providers.a = { json: { status: '435', msg: 'Model not support' } };
+    providers.b = { status: 200, reply: '换了一个模型' };
+    const partials = [];
+    const result = await diagnosisChat(habit, [{ role: 'user', content: '在吗' }], { onReply: t => partials.push(t) });
+    assert.equal(result.reply, '换了一个模型');
+    assert.deepEqual(providerHits.map(h => [h.name, h.stream]), [['a', true], ['b', true]]);
+    assert.equal(isConfigHealthy('a'), false);
+    assert.deepEqual(storage.calls.setActive, ['b']);
+    assert.equal(partials.at(-1), '换了一个模型');
+});
+
+check('streaming request: HTTP 200 error field is reported', async () => {
+    useConfigs('a');
+    providers.a = { json: { error: { message: 'invalid model' } } };
+    await assert.rejects(
+        diagnosisChat(habit, [{ role: 'user', content: '在吗' }], { onReply: () => {} }),
+        /invalid model/
+    );
+});
+
+check('failover: configs in cooldown are skipped without being requested', async () => {
+    useConfigs('a', 'b', 'c');
+    providers.a = { status: 200, reply: 'a' };
+    providers.b = { status: 200, reply: 'b' };
+    providers.c = { status: 200, reply: 'c' };
+    markConfigFailure('a');
+    markConfigFailure('b');
+    const result = await diagnosisChat(habit, [{ role: 'user', content: '在吗' }]);
+    assert.equal(result.reply, 'c');
+    assert.deepEqual(providerHits.map(h => h.name), ['c']);
+    assert.deepEqual(storage.calls.setActive, ['c']);
+});
+
+// aiService 的日志很多，检查过程中只输出结果（VERBOSE=1 时保留）
+const print = console.log.bind(console);
+if (!process.env.VERBOSE) console.log = console.warn = console.error = () => {};
+
+let failed = 0;
+try {
+    for (const { name, fn } of checks) {
+        try {
+            await fn();
+            print(`ok - ${name}`);
+        } catch (e) {
+            failed++;
+            print(`not ok - ${name}\n  ${e.stack || e}`);
+        }
+    }
+} finally {
+    Date.now = realNow;
+    server.close();
+    await rm(outDir, { recursive: true, force: true });
+}
+
+print(`\n${checks.length - failed}/${checks.length} checks passed`);
+process.exitCode = failed ? 1 : 0;
@@ -19,6 +19,7 @@ const BehaviorWizard = lazy(() => import('./components/BehaviorWizard'))
 const Heatmap = lazy(() => import('./components/Heatmap'))
 import { useHabits } from './hooks/useHabits'
 import { useNotifications } from './hooks/useNotifications'
+import { notificationService } from './services/notificationService'
 import { Plus, Zap, Sparkles, X, Calendar, Loader, Award } from 'lucide-react'
 import { StatusBar, Style } from '@capacitor/status-bar'
 import './App.css'
@@ -87,6 +88,23 @@ function App() {
     initStatusBar();
   }, []);
 
+  // Deep link from the native alarm screen: focus the habit that triggered it
+  const [focusHabitId, setFocusHabitId] = useState<string | null>(null);
+  useEffect(() => {
+    const readLaunchHabit = async () => {
+      const habitId = await notificationService.consumeLaunchHabit();
+      if (habitId) setFocusHabitId(habitId);
+    };
+    readLaunchHabit();
+    // Fired by MainActivity when the app is already running
+    window.addEventListener('fugeOpenHabit', readLaunchHabit);
+    return () => window.removeEventListener('fugeOpenHabit', readLaunchHabit);
+  }, []);
+  const handleFocusHandled = useCallback(() => {
+    setFocusHabitId(null);
+    notificationService.reportHabitOpened();
+  }, []);
+
   // Request native notification permissions on app mount (Android 13+)
   useEffect(() => {
     const requestNativePermissions = async () => {
@@ -329,6 +347,8 @@ function App() {
             onSetChain={(id) => setChainModal({ isOpen: true, habitId: id })}
             onAddHabit={handleQuickAdd}
             onReorder={reorderHabits}
+            focusHabitId={focusHabitId}
+            onFocusHandled={handleFocusHandled}
           />
         </section>
       </main>
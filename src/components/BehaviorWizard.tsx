@@ -1,5 +1,5 @@
-import React, { useState } from 'react';
-import { analyzeBehavior, type AnalysisResult } from '../services/aiService';
+import React, { useState, useRef, useEffect } from 'react';
+import { analyzeBehavior, isAbortError, type AnalysisResult } from '../services/aiService';
 import FoggChart from './FoggChart';
 import RecipeCard from './RecipeCard';
 import { PlusCircle } from 'lucide-react';
@@ -25,6 +25,12 @@ const BehaviorWizard: React.FC<WizardProps> = ({ onSave }) => {
     const [ability, setAbility] = useState(5);
     const [result, setResult] = useState<AnalysisResult | null>(null);
     const [loading, setLoading] = useState(false);
+    // 流式返回中的分析预览
+    const [partialAnalysis, setPartialAnalysis] = useState('');
+    const abortRef = useRef<AbortController | null>(null);
+
+    // Cancel any in-flight analysis on unmount
+    useEffect(() => () => abortRef.current?.abort(), []);
 
     // Setup Modal State
     const [isSetupOpen, setIsSetupOpen] = useState(false);
@@ -35,15 +41,29 @@ const BehaviorWizard: React.FC<WizardProps> = ({ onSave }) => {
             return;
         }
 
+        abortRef.current?.abort();
+        const controller = new AbortController();
+        abortRef.current = controller;
+
         setLoading(true);
+        setResult(null);
+        setPartialAnalysis('');
         try {
-            const data = await analyzeBehavior(behavior, motivation, ability);
+            const data = await analyzeBehavior(behavior, motivation, ability, {
+                onAnalysis: setPartialAnalysis,
+                signal: controller.signal
+            });
             setResult(data);
         } catch (error: any) {
+            if (isAbortError(error)) return;
             console.error("Analysis failed:", error);
             alert(`分析失败: ${error.message || '请检查网络或配置'}`);
         } finally {
-            setLoading(false);
+            if (abortRef.current === controller) {
+                abortRef.current = null;
+                setPartialAnalysis('');
+                setLoading(false);
+            }
         }
     };
 
@@ -135,6 +155,17 @@ const BehaviorWizard: React.FC<WizardProps> = ({ onSave }) => {
                 分析行为
             </button>
 
+            {loading && !result && (
+                <div className="result-card">
+                    <h3>💡 正在分析...</h3>
+                    {partialAnalysis && (
+                        <div className="analysis-quote">
+                            " {partialAnalysis} "
+                        </div>
+                    )}
+                </div>
+            )}
+
             {result && (
                 <div className="result-card">
                     <h3>💡 行为设计建议</h3>
@@ -1,6 +1,6 @@
 import React, { useState, useRef, useEffect } from 'react';
 import { X, Send, Check, Sparkles } from 'lucide-react';
-import { diagnosisChat } from '../services/aiService';
+import { diagnosisChat, isAbortError } from '../services/aiService';
 import type { ChatMessage } from '../services/aiService';
 import './DiagnosisModal.css';
 
@@ -16,13 +16,19 @@ const DiagnosisModal: React.FC<DiagnosisModalProps> = ({ isOpen, onClose, habit,
     const [input, setInput] = useState('');
     const [loading, setLoading] = useState(false);
     const [suggestion, setSuggestion] = useState<{ anchor: string; tiny_behavior: string } | null>(null);
+    // 流式回复中的 AI 文本（null 表示还没收到第一个字）
+    const [streamingReply, setStreamingReply] = useState<string | null>(null);
+    const abortRef = useRef<AbortController | null>(null);
     const messagesEndRef = useRef<HTMLDivElement>(null);
     const inputRef = useRef<HTMLTextAreaElement>(null);
 
     // Scroll to bottom when messages change
     useEffect(() => {
         messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
-    }, [messages]);
+    }, [messages, streamingReply]);
+
+    // Cancel any in-flight stream on unmount
+    useEffect(() => () => abortRef.current?.abort(), []);
 
     // Focus input when modal opens
     useEffect(() => {
@@ -40,6 +46,11 @@ const DiagnosisModal: React.FC<DiagnosisModalProps> = ({ isOpen, onClose, habit,
 
     // Reset when modal closes
     const handleClose = () => {
+        abortRef.current?.abort();
+        abortRef.current = null;
+        // 被取消的请求不会再重置状态，这里直接复位，否则重新打开后一直是加载中
+        setLoading(false);
+        setStreamingReply(null);
         setMessages([]);
         setInput('');
         setSuggestion(null);
@@ -55,8 +66,14 @@ const DiagnosisModal: React.FC<DiagnosisModalProps> = ({ isOpen, onClose, habit,
         setInput('');
         setLoading(true);
 
+        const controller = new AbortController();
+        abortRef.current = controller;
+
         try {
-            const result = await diagnosisChat(habit, newMessages);
+            const result = await diagnosisChat(habit, newMessages, {
+                onReply: setStreamingReply,
+                signal: controller.signal
+            });
 
             setMessages(prev => [...prev, { role: 'assistant', content: result.reply }]);
 
@@ -64,12 +81,18 @@ const DiagnosisModal: React.FC<DiagnosisModalProps> = ({ isOpen, onClose, habit,
                 setSuggestion(result.suggestion);
             }
         } catch (e: any) {
+            // Modal closed mid-stream: nothing to show
+            if (isAbortError(e)) return;
             setMessages(prev => [...prev, {
                 role: 'assistant',
                 content: `😅 抱歉，我这边出了点问题：${e.message}`
             }]);
         } finally {
-            setLoading(false);
+            if (abortRef.current === controller) {
+                abortRef.current = null;
+                setStreamingReply(null);
+                setLoading(false);
+            }
         }
     };
 
@@ -110,7 +133,12 @@ const DiagnosisModal: React.FC<DiagnosisModalProps> = ({ isOpen, onClose, habit,
                             {msg.content}
                         </div>
                     ))}
-                    {loading && (
+                    {loading && streamingReply && (
+                        <div className="chat-bubble assistant">
+                            {streamingReply}
+                        </div>
+                    )}
+                    {loading && !streamingReply && (
                         <div className="chat-bubble assistant typing">
                             <span className="dot"></span>
                             <span className="dot"></span>
@@ -25,9 +25,11 @@ interface DashboardProps {
     onSetChain?: (habitId: string) => void;
     onAddHabit?: (anchor: string) => void;
     onReorder?: (ids: string[]) => void;
+    focusHabitId?: string | null; // Deep link target from the alarm screen
+    onFocusHandled?: () => void;
 }
 
-const HabitDashboard: React.FC<DashboardProps> = ({ habits, aspirations, onDelete, onCheckIn, onBatchCheckIn, onFail, onUpdate, onEvolve, onSetChain, onAddHabit, onReorder }) => {
+const HabitDashboard: React.FC<DashboardProps> = ({ habits, aspirations, onDelete, onCheckIn, onBatchCheckIn, onFail, onUpdate, onEvolve, onSetChain, onAddHabit, onReorder, focusHabitId, onFocusHandled }) => {
     const [editingId, setEditingId] = useState<string | null>(null);
     const [editForm, setEditForm] = useState<{
         anchor: string;
@@ -164,6 +166,43 @@ const HabitDashboard: React.FC<DashboardProps> = ({ habits, aspirations, onDelet
         onUpdate(habitId, { ...habitUpdates, diagnosis_log: newLog });
     };
 
+    // Deep link: chained habits are rendered inline inside their chain root's card,
+    // so resolve the target to the root card that actually shows it
+    const focusCardId = React.useMemo(() => {
+        if (!focusHabitId || !habits.some(h => h.id === focusHabitId)) return null;
+        let currentId = focusHabitId;
+        const visited = new Set([currentId]);
+        for (;;) {
+            const parent = habits.find(h => h.next_habit_id === currentId);
+            if (!parent) return currentId;
+            // A closed loop has no root card to show
+            if (visited.has(parent.id)) return null;
+            visited.add(parent.id);
+            currentId = parent.id;
+        }
+    }, [focusHabitId, habits]);
+
+    // Deep link: switch to a view that renders the card and expand it.
+    // Paused / deleted habits have no card, so just finish the deep link
+    React.useEffect(() => {
+        if (!focusHabitId) return;
+        if (!focusCardId) {
+            onFocusHandled?.();
+            return;
+        }
+        setViewMode(mode => mode === 'cluster' ? 'vision' : mode);
+        setExpandedCardId(focusCardId);
+    }, [focusHabitId, focusCardId, onFocusHandled]);
+
+    // Deep link: scroll to the card after the expanded card has actually been rendered
+    React.useEffect(() => {
+        if (!focusCardId || expandedCardId !== focusCardId || viewMode === 'cluster') return;
+        const card = document.getElementById(`habit-card-${focusCardId}`);
+        if (!card) return;
+        card.scrollIntoView({ behavior: 'smooth', block: 'center' });
+        onFocusHandled?.();
+    }, [focusCardId, viewMode, expandedCardId, onFocusHandled]);
+
     const renderHabitCard = (habit: HabitRecipe) => {
         const isEditing = editingId === habit.id;
 
@@ -283,6 +322,7 @@ const HabitDashboard: React.FC<DashboardProps> = ({ habits, aspirations, onDelet
         return (
             <div
                 key={habit.id}
+                id={`habit-card-${habit.id}`}
                 className={`habit-card ${habit.habit_type === 'pearl' ? 'pearl' : ''} ${isExpanded ? 'expanded' : 'compact'}`}
                 onClick={() => !isExpanded && setExpandedCardId(habit.id)}
             >
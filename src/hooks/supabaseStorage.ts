@@ -4,6 +4,7 @@
  */
 import { supabase, HABITS_TABLE, ASPIRATIONS_TABLE } from '../lib/supabase';
 import type { HabitRecipe } from '../types';
+import { invalidateActiveConfig, invalidateConfigCache } from '../services/aiCache';
 
 
 
@@ -230,6 +231,8 @@ export const cloudSettings = {
                 console.error('保存配置失败:', error);
                 return false;
             }
+            // 旧版配置可能作为 AI 配置的降级来源
+            invalidateConfigCache();
             return true;
         } catch (e: any) {
             console.error('保存配置异常 (Exception):', e);
@@ -330,6 +333,7 @@ export const cloudAIConfigs = {
             console.error('保存 AI 配置失败:', error);
             return false;
         }
+        invalidateConfigCache();
         return true;
     },
 
@@ -343,6 +347,7 @@ export const cloudAIConfigs = {
             console.error('删除 AI 配置失败:', error);
             return false;
         }
+        invalidateConfigCache();
         return true;
     },
 
@@ -363,6 +368,8 @@ export const cloudAIConfigs = {
             console.error('设置激活配置失败:', error);
             return false;
         }
+        // 只切换了激活项，配置列表缓存（故障切换用）仍然有效
+        invalidateActiveConfig();
         return true;
     }
 };
@@ -194,6 +194,11 @@ export const useHabits = () => {
         const prevHabits = [...habits];
         setHabits(habits.map(h => h.id === id ? updatedHabit : h));
 
+        // 文案变化只需原地更新原生闹钟内容
+        if (updatedHabit.reminder_time && newBehavior !== oldBehavior) {
+            await notificationService.updateReminderContent(updatedHabit);
+        }
+
         const success = await cloudHabits.upsert(updatedHabit);
         if (!success) {
             alert("❌ 同步到云端失败");
@@ -214,7 +219,12 @@ export const useHabits = () => {
         if (!success) {
             alert("❌ 云端删除失败");
             setHabits(prevHabits);
+            return;
         }
+
+        // 取消原生闹钟并清理暂停窗口：暂停中的习惯闹钟每天仍在顺延注册，只清窗口会让它第二天照常响铃
+        await notificationService.cancelReminder(id);
+        await notificationService.resumeReminders(`pause:${id}`);
     };
 
     const checkInHabit = async (id: string, level: 'mini' | 'plus' | 'elite' = 'mini'): Promise<{ nextHabitId?: string }> => {
@@ -269,7 +279,9 @@ export const useHabits = () => {
         setHabits(habits.map(h => h.id === id ? updatedHabit : h));
 
         // Update Notification logic
-        if (updates.reminder_time !== undefined) { // Check if reminder_time was part of the update
+        // The edit form always sends reminder_time, so only treat it as a change when the value differs
+        const reminderChanged = updates.reminder_time !== undefined && updates.reminder_time !== (target.reminder_time || '');
+        if (reminderChanged) {
             if (updates.reminder_time === '' || updates.reminder_time === null) {
                 // If explicitly cleared
                 await notificationService.cancelReminder(id);
@@ -280,6 +292,12 @@ export const useHabits = () => {
         } else if (target.reminder_time && !updatedHabit.reminder_time) {
             // If reminder_time was removed by other means (e.g., full object replacement without reminder_time)
             await notificationService.cancelReminder(id);
+        } else if (updatedHabit.reminder_time && updates.aspiration !== undefined && updates.aspiration !== target.aspiration) {
+            // Aspiration scopes native suspension windows and is stored with the alarm, so re-register it
+            await notificationService.scheduleReminder(updatedHabit);
+        } else if (updates.tiny_behavior !== undefined && updates.tiny_behavior !== target.tiny_behavior && updatedHabit.reminder_time) {
+            // Only the text changed: edit the native alarm in place instead of re-registering it
+            await notificationService.updateReminderContent(updatedHabit);
         }
 
 
@@ -296,7 +314,16 @@ export const useHabits = () => {
     };
 
     const pauseHabit = async (id: string, paused: boolean) => {
-        updateHabit(id, { paused });
+        // 暂停只写一个原生暂停窗口，不取消/重建系统闹钟
+        const ok = paused
+            ? await notificationService.suspendReminders(`pause:${id}`, { habitId: id })
+            : await notificationService.resumeReminders(`pause:${id}`);
+        if (!ok) {
+            // 原生暂停窗口没写成功时不改状态，否则界面显示已暂停但闹钟仍会响（或反之）
+            alert(paused ? "❌ 暂停提醒失败，请重试" : "❌ 恢复提醒失败，请重试");
+            return;
+        }
+        await updateHabit(id, { paused });
     };
 
     const getWeeklyCompletionRate = (habit: HabitRecipe): number => {
@@ -0,0 +1,246 @@
+/**
+ * AI Service Cache Layer
+ * - Active config cache (memory only, the API key is never written to storage), invalidated on config changes;
+ *   the config list used for failover survives active-config switches
+ * - Content-addressed LRU response cache with TTL and in-flight de-duplication
+ * - Provider health tracking so known-bad configs are skipped without probing
+ * - Per-config latency stats (time-to-first-token and total)
+ *
+ * Pure module (no Supabase imports) so it can be exercised against a local mock server.
+ */
+
+export interface ResolvedAIConfig {
+    apiKey: string;
+    baseUrl: string;
+    model: string;
+    configId?: string;
+}
+
+// 旧版本把含 API Key 的配置写进了 localStorage，启动时清掉
+const LEGACY_CONFIG_CACHE_KEY = 'fogg_ai_config_cache';
+const CONFIG_TTL_MS = 10 * 60 * 1000; // 10 分钟
+const RESPONSE_CACHE_MAX = 50;
+const HEALTH_BASE_COOLDOWN_MS = 60 * 1000; // 首次失败冷却 1 分钟，之后指数退避
+const HEALTH_MAX_COOLDOWN_MS = 30 * 60 * 1000;
+
+// ---------- Active config cache ----------
+
+let configMemo: { value: ResolvedAIConfig; expiresAt: number } | null = null;
+let configInFlight: Promise<ResolvedAIConfig> | null = null;
+// 失效计数：加载过程中发生失效时，丢弃这次加载的结果（激活配置与配置列表分别计数）
+let configGeneration = 0;
+let configListGeneration = 0;
+
+function clearLegacyPersistedConfig(): void {
+    try {
+        localStorage.removeItem(LEGACY_CONFIG_CACHE_KEY);
+    } catch {
+        // localStorage 不可用
+    }
+}
+
+clearLegacyPersistedConfig();
+
+// 读取激活配置：命中内存缓存时不访问 Supabase，并发请求共享同一次加载。
+// API Key 只保存在内存里，冷启动后第一次请求仍会调用 loader
+export async function getCachedConfig(loader: () => Promise<ResolvedAIConfig>): Promise<ResolvedAIConfig> {
+    if (configMemo && configMemo.expiresAt > Date.now()) return configMemo.value;
+
+    if (!configInFlight) {
+        const generation = configGeneration;
+        configInFlight = loader()
+            .then(value => {
+                if (generation === configGeneration && value.apiKey) {
+                    configMemo = { value, expiresAt: Date.now() + CONFIG_TTL_MS };
+                }
+                return value;
+            })
+            .finally(() => {
+                if (generation === configGeneration) configInFlight = null;
+            });
+    }
+    return configInFlight;
+}
+
+// 故障切换后直接写入新的激活配置，下一次请求无需再读取 Supabase
+export function setCachedConfig(value: ResolvedAIConfig): void {
+    if (!value.apiKey) return;
+    configMemo = { value, expiresAt: Date.now() + CONFIG_TTL_MS };
+}
+
+// 配置列表只在故障切换时使用，仅做内存缓存；切换激活配置不影响列表，增删配置时失效
+let configListMemo: { value: unknown[]; generation: number; expiresAt: number } | null = null;
+
+export async function getCachedConfigList<T>(loader: () => Promise<T[]>): Promise<T[]> {
+    if (configListMemo && configListMemo.generation === configListGeneration && configListMemo.expiresAt > Date.now()) {
+        return configListMemo.value as T[];
+    }
+    const generation = configListGeneration;
+    const value = await loader();
+    if (generation === configListGeneration) {
+        configListMemo = { value, generation, expiresAt: Date.now() + CONFIG_TTL_MS };
+    }
+    return value;
+}
+
+// 激活配置切换（setActive）时调用：只丢弃激活配置缓存
+export function invalidateActiveConfig(): void {
+    configGeneration++;
+    configMemo = null;
+    configInFlight = null;
+}
+
+// 配置内容变化（upsert / delete / 旧版 settings 保存）时调用
+export function invalidateConfigCache(): void {
+    invalidateActiveConfig();
+    configListGeneration++;
+    configListMemo = null;
+}
+
+// ---------- Response cache ----------
+
+interface ResponseEntry {
+    value: string;
+    expiresAt: number;
+}
+
+// Map 保持插入顺序，命中时删除再插入即可实现 LRU
+const responseCache = new Map<string, ResponseEntry>();
+const responseInFlight = new Map<string, Promise<string>>();
+
+// cyrb53: 快速同步字符串哈希，足够用于缓存键
+export function hashContent(str: string, seed = 0): string {
+    let h1 = 0xdeadbeef ^ seed;
+    let h2 = 0x41c6ce57 ^ seed;
+    for (let i = 0; i < str.length; i++) {
+        const ch = str.charCodeAt(i);
+        h1 = Math.imul(h1 ^ ch, 2654435761);
+        h2 = Math.imul(h2 ^ ch, 1597334677);
+    }
+    h1 = Math.imul(h1 ^ (h1 >>> 16), 2246822507) ^ Math.imul(h2 ^ (h2 >>> 13), 3266489909);
+    h2 = Math.imul(h2 ^ (h2 >>> 16), 2246822507) ^ Math.imul(h1 ^ (h1 >>> 13), 3266489909);
+    return (4294967296 * (2097151 & h2) + (h1 >>> 0)).toString(36);
+}
+
+// 缓存键：服务地址 + 模型 + 请求内容哈希
+export function responseCacheKey(config: ResolvedAIConfig, payload: unknown): string {
+    return `${config.baseUrl}|${config.model}|${hashContent(JSON.stringify(payload))}`;
+}
+
+// 命中缓存直接返回；相同请求正在进行时复用同一个 Promise；否则调用 fetcher 并按 TTL 缓存。
+// shareInFlight 为 false 时（请求带 signal 或流式回调）既不加入也不登记进行中的请求：
+// 否则一个调用方取消会让所有加入者一起失败，后加入者也收不到流式内容
+export async function cachedResponse(
+    key: string,
+    ttlMs: number,
+    fetcher: () => Promise<string>,
+    shareInFlight = true
+): Promise<string> {
+    const hit = responseCache.get(key);
+    if (hit) {
+        responseCache.delete(key);
+        if (hit.expiresAt > Date.now()) {
+            responseCache.set(key, hit);
+            console.log('[AI] Response cache hit');
+            return hit.value;
+        }
+    }
+
+    if (shareInFlight) {
+        const pending = responseInFlight.get(key);
+        if (pending) {
+            console.log('[AI] Joining in-flight request');
+            return pending;
+        }
+    }
+
+    const request = fetcher()
+        .then(value => {
+            responseCache.set(key, { value, expiresAt: Date.now() + ttlMs });
+            while (responseCache.size > RESPONSE_CACHE_MAX) {
+                const oldest = responseCache.keys().next().value;
+                if (oldest === undefined) break;
+                responseCache.delete(oldest);
+            }
+            return value;
+        })
+        .finally(() => {
+            if (responseInFlight.get(key) === request) responseInFlight.delete(key);
+        });
+
+    if (shareInFlight) responseInFlight.set(key, request);
+    return request;
+}
+
+export function clearResponseCache(): void {
+    responseCache.clear();
+    responseInFlight.clear();
+}
+
+// ---------- Provider health ----------
+
+interface HealthEntry {
+    failures: number;
+    cooldownUntil: number;
+}
+
+const providerHealth = new Map<string, HealthEntry>();
+
+export function markConfigFailure(configId?: string): void {
+    if (!configId) return;
+    const entry = providerHealth.get(configId) || { failures: 0, cooldownUntil: 0 };
+    entry.failures++;
+    const cooldown = Math.min(HEALTH_BASE_COOLDOWN_MS * 2 ** (entry.failures - 1), HEALTH_MAX_COOLDOWN_MS);
+    entry.cooldownUntil = Date.now() + cooldown;
+    providerHealth.set(configId, entry);
+    console.warn(`[AI] Config ${configId} marked unhealthy for ${Math.round(cooldown / 1000)}s`);
+}
+
+export function markConfigSuccess(configId?: string): void {
+    if (!configId) return;
+    providerHealth.delete(configId);
+}
+
+export function isConfigHealthy(configId: string): boolean {
+    const entry = providerHealth.get(configId);
+    return !entry || entry.cooldownUntil <= Date.now();
+}
+
+// ---------- Latency stats ----------
+
+export interface LatencyStats {
+    count: number;
+    lastTtftMs: number;
+    lastTotalMs: number;
+    avgTtftMs: number;
+    avgTotalMs: number;
+}
+
+const latencyStats = new Map<string, LatencyStats>();
+
+// 记录一次请求的首字延迟与总耗时；非流式请求的首字延迟即总耗时
+export function recordLatency(config: ResolvedAIConfig, ttftMs: number, totalMs: number): void {
+    const key = config.configId || `${config.baseUrl}|${config.model}`;
+    const prev = latencyStats.get(key) || { count: 0, lastTtftMs: 0, lastTotalMs: 0, avgTtftMs: 0, avgTotalMs: 0 };
+    const count = prev.count + 1;
+    latencyStats.set(key, {
+        count,
+        lastTtftMs: ttftMs,
+        lastTotalMs: totalMs,
+        avgTtftMs: prev.avgTtftMs + (ttftMs - prev.avgTtftMs) / count,
+        avgTotalMs: prev.avgTotalMs + (totalMs - prev.avgTotalMs) / count
+    });
+    console.log(`[AI] Latency ${key}: first token ${Math.round(ttftMs)}ms, total ${Math.round(totalMs)}ms`);
+}
+
+export function getLatencyStats(): Record<string, LatencyStats> {
+    return Object.fromEntries(latencyStats);
+}
+
+// 测试/调试用：清空全部缓存与健康状态
+export function resetAICaches(): void {
+    invalidateConfigCache();
+    clearResponseCache();
+    providerHealth.clear();
+    latencyStats.clear();
+}
@@ -4,18 +4,23 @@
  */
 import { cloudSettings, cloudAIConfigs } from '../hooks/supabaseStorage';
 import type { AnalysisResult, PraiseResult, AIConfig } from '../types';
+import {
+    getCachedConfig, getCachedConfigList, setCachedConfig, cachedResponse, responseCacheKey,
+    markConfigFailure, markConfigSuccess, isConfigHealthy, recordLatency, type ResolvedAIConfig
+} from './aiCache';
+import { isEventStream, readChatStream, extractPartialJsonField } from './aiStream';
+
+// Get AI config (cached; Supabase is only hit on cache miss or after invalidation)
+async function getAIConfig(): Promise<ResolvedAIConfig> {
+    return getCachedConfig(loadAIConfig);
+}
 
-// Get AI config from cloud (Prioritize new ai_configs table)
-async function getAIConfig(): Promise<{ apiKey: string; baseUrl: string; model: string, configId?: string }> {
+// Load AI config from cloud (Prioritize new ai_configs table)
+async function loadAIConfig(): Promise<ResolvedAIConfig> {
     // 1. Try get active config from new table
     const activeConfig = await cloudAIConfigs.getActive();
     if (activeConfig) {
-        return {
-            apiKey: activeConfig.api_key,
-            baseUrl: activeConfig.base_url,
-            model: activeConfig.model_name,
-            configId: activeConfig.id
-        };
+        return toResolvedConfig(activeConfig);
     }
 
     // 2. Fallback to legacy settings
@@ -27,39 +32,110 @@ async function getAIConfig(): Promise<{ apiKey: string; baseUrl: string; model:
     };
 }
 
-// 尝试切换到下一个可用配置
+function toResolvedConfig(config: AIConfig): ResolvedAIConfig {
+    return {
+        apiKey: config.api_key,
+        baseUrl: config.base_url,
+        model: config.model_name,
+        configId: config.id
+    };
+}
+
+// 尝试切换到下一个可用配置（跳过处于冷却期的已知故障配置）
 async function switchToNextConfig(currentConfigId?: string): Promise<boolean> {
     if (!currentConfigId) return false;
 
-    const allConfigs = await cloudAIConfigs.fetchAll();
+    const allConfigs = await getCachedConfigList<AIConfig>(() => cloudAIConfigs.fetchAll());
     if (allConfigs.length <= 1) return false;
 
     // 找到当前配置的索引
     const currentIndex = allConfigs.findIndex(c => c.id === currentConfigId);
-    let nextIndex = (currentIndex + 1) % allConfigs.length;
-
-    // 简单轮询：找下一个
-    const nextConfig = allConfigs[nextIndex];
-    if (nextConfig && nextConfig.id !== currentConfigId) {
-        console.log(`[AI] Auto-switching to config: ${nextConfig.name}`);
-        await cloudAIConfigs.setActive(nextConfig.id);
-        return true;
+
+    // 轮询：从下一个开始找第一个健康的配置
+    for (let step = 1; step < allConfigs.length; step++) {
+        const nextConfig = allConfigs[(currentIndex + step) % allConfigs.length];
+        if (nextConfig && nextConfig.id !== currentConfigId && isConfigHealthy(nextConfig.id)) {
+            console.log(`[AI] Auto-switching to config: ${nextConfig.name}`);
+            if (!await cloudAIConfigs.setActive(nextConfig.id)) return false;
+            // setActive 只清掉激活配置缓存；直接写入新配置，重试时不必再读取 Supabase
+            setCachedConfig(toResolvedConfig(nextConfig));
+            return true;
+        }
     }
     return false;
 }
 
+interface ChatCompletionOptions {
+    // 大于 0 时按 模型+提示词 哈希缓存响应，并合并相同的并发请求（带 signal / onText 时不合并）
+    cacheTtlMs?: number;
+    // 提供时使用流式 (SSE) 请求，每收到新内容回调一次累计文本
+    onText?: (fullText: string) => void;
+    // 调用方取消（例如弹窗关闭）
+    signal?: AbortSignal;
+    temperature?: number;
+}
+
+type CompletionMessage = { role: 'user' | 'assistant' | 'system'; content: string };
+
 // Generic chat completion call with retry
-async function chatCompletion(systemPrompt: string, userMessage: string, retryCount = 0): Promise<string> {
-    const { apiKey, baseUrl, model, configId } = await getAIConfig();
+async function chatCompletion(systemPrompt: string, userMessage: string, options: ChatCompletionOptions = {}): Promise<string> {
+    return completeMessages([
+        { role: 'system', content: systemPrompt },
+        { role: 'user', content: userMessage }
+    ], options);
+}
 
-    console.log(`[AI] Calling ${baseUrl} with model ${model} (Attempt ${retryCount + 1})`);
+async function completeMessages(messages: CompletionMessage[], options: ChatCompletionOptions = {}, retryCount = 0): Promise<string> {
+    const config = await getAIConfig();
 
-    if (!apiKey) {
+    if (!config.apiKey) {
         throw new Error('请先在设置中配置 OpenAI API Key');
     }
 
+    // 当前配置仍在冷却期：直接切换，不再重复请求已知故障的服务商
+    if (config.configId && !isConfigHealthy(config.configId) && retryCount < 3) {
+        const switched = await switchToNextConfig(config.configId);
+        if (switched) {
+            return completeMessages(messages, options, retryCount + 1);
+        }
+    }
+
+    if (!options.cacheTtlMs) {
+        return requestCompletion(config, messages, options, retryCount);
+    }
+
+    const key = responseCacheKey(config, { messages, temperature: options.temperature ?? 0.7 });
+    // 可取消或流式的请求只读写结果缓存，不与其他调用方共享进行中的请求
+    const shareInFlight = !options.signal && !options.onText;
+    return cachedResponse(key, options.cacheTtlMs,
+        () => requestCompletion(config, messages, options, retryCount), shareInFlight);
+}
+
+async function requestCompletion(
+    config: ResolvedAIConfig,
+    messages: CompletionMessage[],
+    options: ChatCompletionOptions,
+    retryCount: number
+): Promise<string> {
+    const { apiKey, baseUrl, model, configId } = config;
+    const streaming = !!options.onText;
+
+    console.log(`[AI] Calling ${baseUrl} with model ${model} (Attempt ${retryCount + 1}${streaming ? ', stream' : ''})`);
+
+    if (options.signal?.aborted) {
+        throw new DOMException('Request cancelled', 'AbortError');
+    }
+
+    // 60s 超时；流式请求每收到数据就重新计时
     const controller = new AbortController();
-    const timeoutId = setTimeout(() => controller.abort(), 60000); // 60s timeout
+    let timeoutId = setTimeout(() => controller.abort(), 60000);
+    const resetTimeout = () => {
+        clearTimeout(timeoutId);
+        timeoutId = setTimeout(() => controller.abort(), 60000);
+    };
+    const onCallerAbort = () => controller.abort();
+    options.signal?.addEventListener('abort', onCallerAbort);
+    const startedAt = performance.now();
 
     try {
         const response = await fetch(`${baseUrl}/chat/completions`, {
@@ -70,24 +146,25 @@ async function chatCompletion(systemPrompt: string, userMessage: string, retryCo
             },
             body: JSON.stringify({
                 model,
-                messages: [
-                    { role: 'system', content: systemPrompt },
-                    { role: 'user', content: userMessage }
-                ],
-                temperature: 0.7
+                messages,
+                temperature: options.temperature ?? 0.7,
+                ...(streaming ? { stream: true } : {})
             }),
             signal: controller.signal
         });
 
-        clearTimeout(timeoutId);
+        resetTimeout();
 
         if (!response.ok) {
             // Check for 429 Rate Limit
+            if (response.status === 429 || response.status >= 500) {
+                markConfigFailure(configId);
+            }
             if (response.status === 429 && retryCount < 3) {
                 console.warn(`[AI] Rate limit exceeded (429). Trying next config...`);
                 const switched = await switchToNextConfig(configId);
                 if (switched) {
-                    return chatCompletion(systemPrompt, userMessage, retryCount + 1);
+                    return completeMessages(messages, options, retryCount + 1);
                 }
             }
 
@@ -119,6 +196,25 @@ async function chatCompletion(systemPrompt: string, userMessage: string, retryCo
             }
         }
 
+        // 服务商忽略 stream 直接返回 JSON 时，走下面的普通响应处理（含 HTTP 200 错误检查与故障切换）
+        if (streaming && options.onText && isEventStream(response)) {
+            const onText = options.onText;
+            let firstTokenAt = 0;
+            const content = await readChatStream(response, (fullText) => {
+                if (!firstTokenAt) firstTokenAt = performance.now();
+                onText(fullText);
+            }, resetTimeout);
+
+            if (!content) {
+                throw new Error('AI 返回了空内容，且无明确错误信息');
+            }
+
+            const finishedAt = performance.now();
+            recordLatency(config, (firstTokenAt || finishedAt) - startedAt, finishedAt - startedAt);
+            markConfigSuccess(configId);
+            return content;
+        }
+
         const data = await response.json() as import('../types').AIChatCompletionResponse;
         const content = data.choices?.[0]?.message?.content;
 
@@ -133,9 +229,10 @@ async function chatCompletion(systemPrompt: string, userMessage: string, retryCo
 
                 if (isModelError) {
                     console.warn(`[AI] Model error detected (${msg}). Trying next config...`);
+                    markConfigFailure(configId);
                     const switched = await switchToNextConfig(configId);
                     if (switched) {
-                        return chatCompletion(systemPrompt, userMessage, retryCount + 1);
+                        return completeMessages(messages, options, retryCount + 1);
                     }
                     throw new Error(`AI 服务商报错: ${msg} (请检查模型名称是否正确)`);
                 }
@@ -151,25 +248,40 @@ async function chatCompletion(systemPrompt: string, userMessage: string, retryCo
             throw new Error('AI 返回了空内容，且无明确错误信息');
         }
 
+        // 请求的是流式但收到完整 JSON：一次性回调全文
+        options.onText?.(content);
+
+        const totalMs = performance.now() - startedAt;
+        recordLatency(config, totalMs, totalMs);
+        markConfigSuccess(configId);
         return content;
 
     } catch (error: unknown) {
-        clearTimeout(timeoutId);
         console.error('[AI] Request Failed:', error);
 
         if (error instanceof Error) {
             if (error.name === 'AbortError') {
+                // 调用方主动取消：原样抛出，由界面忽略
+                if (options.signal?.aborted) throw error;
                 throw new Error('AI 请求超时 (60秒)，请检查网络或稍后重试');
             }
             if (error.message === 'Failed to fetch') {
+                markConfigFailure(configId);
                 throw new Error('无法连接到 AI 服务器，请检查网络或 Base URL 设置');
             }
             throw error;
         }
         throw new Error(String(error));
+    } finally {
+        clearTimeout(timeoutId);
+        options.signal?.removeEventListener('abort', onCallerAbort);
     }
 }
 
+// 调用方取消请求时抛出的错误，界面应静默忽略
+export const isAbortError = (e: unknown): boolean =>
+    e instanceof Error && e.name === 'AbortError';
+
 // Helper to clean markdown formatting from JSON string
 function cleanJsonResponse(str: string): string {
     if (!str) return '{}';
@@ -188,7 +300,8 @@ function cleanJsonResponse(str: string): string {
 export const analyzeBehavior = async (
     behavior: string,
     motivation: number,
-    ability: number
+    ability: number,
+    stream?: { onAnalysis?: (partialAnalysis: string) => void; signal?: AbortSignal }
 ): Promise<AnalysisResult> => {
     const systemPrompt = `你是一位专业的行为设计顾问，基于福格行为模型帮助用户建立微习惯。
     
@@ -212,7 +325,13 @@ export const analyzeBehavior = async (
 
     let response = '';
     try {
-        response = await chatCompletion(systemPrompt, userMessage);
+        // 流式返回时先预览 analysis 字段，完整 JSON 到齐后再解析
+        const onAnalysis = stream?.onAnalysis;
+        response = await chatCompletion(systemPrompt, userMessage, {
+            cacheTtlMs: 30 * 60 * 1000,
+            onText: onAnalysis ? (fullText) => onAnalysis(extractPartialJsonField(fullText, 'analysis')) : undefined,
+            signal: stream?.signal
+        });
         const cleaned = cleanJsonResponse(response);
         console.log('[AI] Raw Response:', response);
         console.log('[AI] Cleaned Response:', cleaned);
@@ -275,7 +394,7 @@ export const diagnoseFailure = async (habit: any, reason: string): Promise<any>
 
     let response = '';
     try {
-        response = await chatCompletion(systemPrompt, userMessage);
+        response = await chatCompletion(systemPrompt, userMessage, { cacheTtlMs: 30 * 60 * 1000 });
         const cleaned = cleanJsonResponse(response);
         console.log('[AI] Diagnose Raw Response:', response);
         console.log('[AI] Diagnose Cleaned Response:', cleaned);
@@ -303,7 +422,8 @@ export interface ChatMessage {
 // Conversational diagnosis - multi-turn chat
 export const diagnosisChat = async (
     habit: any,
-    messages: ChatMessage[]
+    messages: ChatMessage[],
+    stream?: { onReply?: (partialReply: string) => void; signal?: AbortSignal }
 ): Promise<{ reply: string; suggestion?: { anchor: string; tiny_behavior: string } }> => {
     const systemPrompt = `你是用户的好朋友，同时也懂一点行为心理学。用户正在尝试养成一个习惯但遇到了困难。
 
@@ -330,78 +450,49 @@ ${(habit.diagnosis_log || []).map((log: any) =>
 3. 不要每次都给建议，先聊几句再说
 4. 回复要简短，像发微信一样，不要写长篇大论`;
 
-    const { apiKey, baseUrl, model } = await getAIConfig();
-
-    if (!apiKey) {
-        throw new Error('请先在设置中配置 AI API Key');
-    }
-
     const allMessages = [
         { role: 'system' as const, content: systemPrompt },
         ...messages
     ];
 
-    const controller = new AbortController();
-    const timeoutId = setTimeout(() => controller.abort(), 60000);
-
-    try {
-        const response = await fetch(`${baseUrl}/chat/completions`, {
-            method: 'POST',
-            headers: {
-                'Content-Type': 'application/json',
-                'Authorization': `Bearer ${apiKey}`
-            },
-            body: JSON.stringify({
-                model,
-                messages: allMessages,
-                temperature: 0.8
-            }),
-            signal: controller.signal
-        });
-
-        clearTimeout(timeoutId);
-
-        if (!response.ok) {
-            const errorText = await response.text();
-            throw new Error(`AI 请求失败 (${response.status}): ${errorText.substring(0, 100)}`);
-        }
-
-        const data = await response.json() as import('../types').AIChatCompletionResponse;
-        const content = data.choices?.[0]?.message?.content || '';
-
-        // Parse suggestion if present
-        const suggestionMatch = content.match(/\[SUGGESTION\](.*?)\[\/SUGGESTION\]/s);
-        let suggestion: { anchor: string; tiny_behavior: string } | undefined;
-        let reply = content;
-
-        if (suggestionMatch) {
-            try {
-                suggestion = JSON.parse(suggestionMatch[1]);
-                reply = content.replace(/\[SUGGESTION\].*?\[\/SUGGESTION\]/s, '').trim();
-            } catch {
-                // If parsing fails, just show the raw reply
+    // 流式预览时隐藏末尾的 [SUGGESTION] 块（包括尚未收全的前缀）
+    const onReply = stream?.onReply;
+    const onText = onReply
+        ? (fullText: string) => {
+            const tag = fullText.indexOf('[SUGGESTION]');
+            let visible = tag !== -1 ? fullText.slice(0, tag) : fullText;
+            const lastOpen = visible.lastIndexOf('[');
+            if (lastOpen !== -1 && '[SUGGESTION]'.startsWith(visible.slice(lastOpen))) {
+                visible = visible.slice(0, lastOpen);
             }
+            onReply(visible.trimEnd());
         }
+        : undefined;
 
-        return { reply, suggestion };
+    const content = await completeMessages(allMessages, { temperature: 0.8, onText, signal: stream?.signal });
 
-    } catch (error: unknown) {
-        clearTimeout(timeoutId);
-        if (error instanceof Error) {
-            if (error.name === 'AbortError') {
-                throw new Error('请求超时，请检查网络');
-            }
-            throw error;
+    // Parse suggestion if present
+    const suggestionMatch = content.match(/\[SUGGESTION\](.*?)\[\/SUGGESTION\]/s);
+    let suggestion: { anchor: string; tiny_behavior: string } | undefined;
+    let reply = content;
+
+    if (suggestionMatch) {
+        try {
+            suggestion = JSON.parse(suggestionMatch[1]);
+            reply = content.replace(/\[SUGGESTION\].*?\[\/SUGGESTION\]/s, '').trim();
+        } catch {
+            // If parsing fails, just show the raw reply
         }
-        throw new Error(String(error));
     }
+
+    return { reply, suggestion };
 };
 
 // Praise for celebrations
 export const getPraise = async (behavior: string): Promise<PraiseResult> => {
     try {
         const systemPrompt = '你是一位热情的啦啦队长。用一句话和一个emoji庆祝用户完成了习惯。回复JSON格式: {"message": "庆祝语", "emoji": "🎉"}';
-        const response = await chatCompletion(systemPrompt, `用户完成了: ${behavior}`);
+        const response = await chatCompletion(systemPrompt, `用户完成了: ${behavior}`, { cacheTtlMs: 5 * 60 * 1000 });
         return JSON.parse(response);
     } catch {
         return { message: '你真棒！继续加油！', emoji: '👍' };
@@ -0,0 +1,105 @@
+/**
+ * Streaming (SSE) helpers for OpenAI-compatible /chat/completions
+ * Pure module (only uses fetch Response) so it can be exercised against a local stub server.
+ */
+
+interface StreamChunk {
+    choices?: { delta?: { content?: string }; message?: { content?: string } }[];
+    error?: { message?: string } | string;
+}
+
+// 服务商不支持流式（或在 HTTP 200 中返回错误）时会直接返回 JSON，
+// 调用方应按普通响应处理，以复用其中的错误检查与故障切换
+export function isEventStream(response: Response): boolean {
+    const contentType = response.headers.get('content-type') || '';
+    return !!response.body && !contentType.includes('application/json');
+}
+
+// 逐块读取 SSE 响应，每收到新内容回调一次累计文本，返回完整内容。
+// 只处理 isEventStream 为 true 的响应
+export async function readChatStream(
+    response: Response,
+    onText: (fullText: string) => void,
+    onActivity?: () => void
+): Promise<string> {
+    if (!response.body) {
+        throw new Error('AI 响应不是流式数据');
+    }
+
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+    let fullText = '';
+
+    const handleEvent = (event: string): boolean => {
+        // 一个事件可能包含多行 data:，按规范用换行拼接
+        const data = event
+            .split('\n')
+            .filter(line => line.startsWith('data:'))
+            .map(line => line.slice(5).trimStart())
+            .join('\n');
+        if (!data) return false;
+        if (data === '[DONE]') return true;
+
+        let chunk: StreamChunk;
+        try {
+            chunk = JSON.parse(data);
+        } catch {
+            console.warn('[AI] Skipping malformed SSE chunk:', data.substring(0, 50));
+            return false;
+        }
+
+        if (chunk.error) {
+            const msg = typeof chunk.error === 'string' ? chunk.error : (chunk.error.message || JSON.stringify(chunk.error));
+            throw new Error(`AI API 报错: ${msg}`);
+        }
+
+        const delta = chunk.choices?.[0]?.delta?.content ?? chunk.choices?.[0]?.message?.content;
+        if (delta) {
+            fullText += delta;
+            onText(fullText);
+        }
+        return false;
+    };
+
+    try {
+        while (true) {
+            const { done, value } = await reader.read();
+            if (done) break;
+            onActivity?.();
+
+            buffer += decoder.decode(value, { stream: true }).replace(/\r\n?/g, '\n');
+            let boundary = buffer.indexOf('\n\n');
+            while (boundary !== -1) {
+                const event = buffer.slice(0, boundary);
+                buffer = buffer.slice(boundary + 2);
+                if (handleEvent(event)) return fullText;
+                boundary = buffer.indexOf('\n\n');
+            }
+        }
+
+        // 流结束但最后一个事件没有空行结尾
+        buffer += decoder.decode();
+        if (buffer.trim()) handleEvent(buffer);
+        return fullText;
+    } finally {
+        reader.releaseLock();
+    }
+}
+
+const JSON_ESCAPES: Record<string, string> = {
+    '"': '"', '\\': '\\', '/': '/', b: '\b', f: '\f', n: '\n', r: '\r', t: '\t'
+};
+
+// 从尚未完整的 JSON 文本中提取某个字符串字段的当前内容（用于流式预览）。
+// 转义序列一次扫描解码，末尾尚未收全的 \uXXXX 先丢弃
+export function extractPartialJsonField(raw: string, field: string): string {
+    const match = raw.match(new RegExp(`"${field}"\\s*:\\s*"((?:[^"\\\\]|\\\\.)*)`));
+    if (!match) return '';
+    return match[1].replace(/\\(u[0-9a-fA-F]{4}|u[0-9a-fA-F]{0,3}$|.)/g, (_, escape: string) => {
+        if (escape[0] === 'u') {
+            return escape.length === 5 ? String.fromCharCode(parseInt(escape.slice(1), 16)) : '';
+        }
+        return JSON_ESCAPES[escape] ?? escape;
+    });
+}
@@ -1,11 +1,38 @@
 import { LocalNotifications } from '@capacitor/local-notifications';
-import { registerPlugin } from '@capacitor/core';
+import { Capacitor, registerPlugin } from '@capacitor/core';
 import type { Habit } from '../types/index';
 
 // Define Native Alarm Module
 interface AlarmModulePlugin {
-    setAlarm(options: { timestamp: string, title: string, body: string, habitId: string, id: number }): Promise<void>;
+    setAlarm(options: { timestamp: string, title: string, body: string, habitId: string, id: number, aspiration?: string, sound?: string }): Promise<void>;
     cancelAlarm(options: { id: number }): Promise<void>;
+    // 原地修改提醒内容，不重新注册系统闹钟；sound 传空字符串恢复默认铃声
+    updateAlarmContent(options: { id: number, title?: string, body?: string, sound?: string }): Promise<void>;
+    // 命名暂停窗口：不传 aspiration / habitId 为全局；不传 end 表示直到手动恢复
+    setSuspension(options: { name: string, start?: number, end?: number, aspiration?: string, habitId?: string }): Promise<void>;
+    // 返回因该窗口暂缓、现已重新注册的闹钟数量
+    clearSuspension(options: { name: string }): Promise<{ resumed?: number }>;
+    // 闹钟健康检查统计 / 立即执行一次检查
+    getAlarmHealth(): Promise<{ metrics: AlarmHealthMetrics }>;
+    runAlarmWatchdog(): Promise<{ checked: number, dropped: number, repaired: number }>;
+    // 闹钟界面深链接：取出待打开的习惯，定位完成后上报启动耗时
+    consumeLaunchHabit(): Promise<{ habitId?: string }>;
+    reportHabitOpened(): Promise<{ latencyMs?: number, bucket?: 'prewarmed' | 'cold' | 'warm' }>;
+}
+
+interface AlarmHealthMetrics {
+    runs?: number;
+    drops?: number;
+    repairs?: number;
+    lastRun?: number;
+    lastDrop?: number;
+    lastChecked?: number;
+    lastDropped?: number;
+    lastRepaired?: number;
+    // 检查本身失败的次数（不计入 runs），以及最近一次失败的时间和原因
+    failures?: number;
+    lastFailure?: number;
+    lastError?: string;
 }
 const AlarmModule = registerPlugin<AlarmModulePlugin>('AlarmModule');
 
@@ -130,7 +157,7 @@ export const notificationService = {
 
         try {
             // Use Native Alarm Module for reliable full-screen alerts
-            await this.scheduleNativeAlarm(habit.id, habit.tiny_behavior, hour, minute);
+            await this.scheduleNativeAlarm(habit.id, habit.tiny_behavior, hour, minute, habit.aspiration);
             log(`✅ Successfully scheduled Native Alarm for ${hour}:${minute}`);
 
         } catch (e) {
@@ -139,7 +166,7 @@ export const notificationService = {
     },
 
     // Native Alarm Scheduling
-    async scheduleNativeAlarm(habitId: string, title: string, hour: number, minute: number): Promise<void> {
+    async scheduleNativeAlarm(habitId: string, title: string, hour: number, minute: number, aspiration?: string): Promise<void> {
         try {
             const now = new Date();
             let target = new Date();
@@ -160,6 +187,7 @@ export const notificationService = {
                 title: '🔔 微习惯提醒',
                 body: `该执行习惯了: ${title}`,
                 habitId,
+                aspiration,
                 id
             });
             log('Native Alarm set successfully');
@@ -168,6 +196,90 @@ export const notificationService = {
         }
     },
 
+    // 习惯文案变化时只更新原生存储中的内容，不动 AlarmManager
+    async updateReminderContent(habit: Habit): Promise<void> {
+        if (!habit.reminder_time) return;
+
+        const id = this.hashString(habit.id);
+        log(`Updating alarm content for ID: ${id}`);
+
+        try {
+            await AlarmModule.updateAlarmContent({
+                id,
+                body: `该执行习惯了: ${habit.tiny_behavior}`
+            });
+            log('Native Alarm content updated');
+        } catch (e) {
+            // 原生端没有这个闹钟（例如已响过），回退为重新调度
+            log(`Update content failed, rescheduling: ${e}`);
+            await this.scheduleReminder(habit);
+        }
+    },
+
+    // 暂停提醒：只写一个原生暂停窗口，不逐个取消闹钟
+    // 例如休假 suspendReminders('vacation', { end })，暂停单个习惯 suspendReminders(`pause:${id}`, { habitId: id })
+    async suspendReminders(name: string, scope: { start?: number, end?: number, aspiration?: string, habitId?: string } = {}): Promise<boolean> {
+        log(`Suspending reminders: ${name} ${JSON.stringify(scope)}`);
+        // 网页环境没有原生闹钟，无需暂停
+        if (!Capacitor.isNativePlatform()) return true;
+        try {
+            await AlarmModule.setSuspension({ name, ...scope });
+            return true;
+        } catch (e) {
+            log(`Suspend FAILED: ${e}`);
+            return false;
+        }
+    },
+
+    // 恢复提醒：移除暂停窗口，已注册的闹钟会在下一次到点时正常响铃，暂缓中的闹钟由原生端重新注册
+    async resumeReminders(name: string): Promise<boolean> {
+        log(`Resuming reminders: ${name}`);
+        if (!Capacitor.isNativePlatform()) return true;
+        try {
+            const { resumed } = await AlarmModule.clearSuspension({ name });
+            if (resumed) log(`Re-armed ${resumed} parked alarms`);
+            return true;
+        } catch (e) {
+            log(`Resume FAILED: ${e}`);
+            return false;
+        }
+    },
+
+    // 查询原生闹钟健康检查统计（被系统清除、已修复的闹钟数量）
+    async getAlarmHealth(): Promise<AlarmHealthMetrics | null> {
+        try {
+            const { metrics } = await AlarmModule.getAlarmHealth();
+            log(`Alarm health: ${JSON.stringify(metrics)}`);
+            return metrics;
+        } catch (e) {
+            log(`Get alarm health FAILED: ${e}`);
+            return null;
+        }
+    },
+
+    // 读取从闹钟界面跳转过来时要打开的习惯（读取后清空）；网页环境下返回 null
+    async consumeLaunchHabit(): Promise<string | null> {
+        try {
+            const { habitId } = await AlarmModule.consumeLaunchHabit();
+            if (habitId) log(`Launch deep link to habit: ${habitId}`);
+            return habitId || null;
+        } catch {
+            return null;
+        }
+    },
+
+    // 习惯卡片已可交互，上报从闹钟到可交互的耗时（原生端按是否预热分别统计）
+    async reportHabitOpened(): Promise<void> {
+        try {
+            const { latencyMs, bucket } = await AlarmModule.reportHabitOpened();
+            if (latencyMs !== undefined) {
+                log(`Alarm to interactive: ${latencyMs}ms (${bucket})`);
+            }
+        } catch {
+            // Not running natively
+        }
+    },
+
     // 仅保留取消功能，用于清理
     async cancelReminder(habitId: string): Promise<void> {
         const notificationId = this.hashString(habitId);